@@ -0,0 +1,83 @@
+package it.novaverse.bigdoorsdungeons;
+
+import nl.pim16aap2.bigDoors.Door;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+// getDoors() and getDoors(name) at 10k real and 10k virtual doors, merged views and the name index against the copies
+// and the scan they replaced. The SQLite read is the same either way, so the real doors are read once up front.
+// Run with -prof gc, gc.alloc.rate.norm is the bytes allocated per call
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MergedDoorsBenchmark {
+
+    private static final int INSTANCES = 20;
+
+    @Param("10000")
+    public int realDoors;
+
+    @Param("10000")
+    public int virtualDoors;
+
+    private Set<Door> stored;
+    private VirtualDoorIndex index;
+    private String name;
+
+    @Setup
+    public void setUp() throws IOException, SQLException {
+        try (var database = new SqliteDoors(TestDoors.world("world"), realDoors)) {
+            stored = database.getDoors();
+        }
+        index = new VirtualDoorIndex();
+        var template = TestDoors.dungeon("dungeon", virtualDoors / INSTANCES);
+        for (var i = 0; i < INSTANCES; i++) {
+            var world = TestDoors.world("dungeon_" + i);
+            index.addAll(world, template.name(), "_" + world.getName(), index.reserve(world.getUID(), template.size()), template.doors());
+        }
+        name = template.doors().get(0).name() + "_dungeon_" + (INSTANCES / 2);
+    }
+
+    // Before: every door copied into a new set
+    @Benchmark
+    public Set<Door> getDoorsCopied() {
+        var doors = new HashSet<>(stored);
+        doors.addAll(index.getAll());
+        return doors;
+    }
+
+    @Benchmark
+    public Set<Door> getDoorsMerged() {
+        return new MergedDoorSet(stored, index.getAll());
+    }
+
+    // Callers go through every door, the view's iteration counts too
+    @Benchmark
+    public int getDoorsMergedIterated() {
+        var count = 0;
+        for (var door : new MergedDoorSet(stored, index.getAll())) {
+            count += (int) door.getDoorUID();
+        }
+        return count;
+    }
+
+    // Before: every virtual door filtered by name
+    @Benchmark
+    public List<Door> getDoorsByNameScanned() {
+        return index.getAll().stream()
+                .filter(door -> door.getName().equals(name))
+                .toList();
+    }
+
+    @Benchmark
+    public List<Door> getDoorsByNameIndexed() {
+        return index.getByName(name);
+    }
+}
@@ -0,0 +1,71 @@
+package it.novaverse.bigdoorsdungeons;
+
+import nl.pim16aap2.bigDoors.Door;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+// Real door reads, straight from a temp SQLite file as the storage's super paths do, and through the real door cache.
+// Run with -prof gc, gc.alloc.rate.norm is the bytes allocated per call
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RealDoorBenchmark {
+
+    private static final int SAMPLES = 1024;
+
+    @Param({"1000", "10000"})
+    public int realDoors;
+
+    private SqliteDoors database;
+    private RealDoorCache cache;
+    private long[] doorUIDs;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException, SQLException {
+        database = new SqliteDoors(TestDoors.world("world"), realDoors);
+        cache = new RealDoorCache(10_000);
+        doorUIDs = new long[SAMPLES];
+        for (var i = 0; i < SAMPLES; i++) {
+            doorUIDs[i] = 1 + (long) i * realDoors / SAMPLES;
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        database.close();
+    }
+
+    private int next() {
+        return next = (next + 1) & (SAMPLES - 1);
+    }
+
+    @Benchmark
+    public Door getDoorSqlite() throws SQLException {
+        return database.getDoor(doorUIDs[next()]);
+    }
+
+    @Benchmark
+    public Door getDoorCached() {
+        var doorUID = doorUIDs[next()];
+        return cache.getDoor(null, doorUID, true, () -> {
+            try {
+                return database.getDoor(doorUID);
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    @Benchmark
+    public ArrayList<Door> getDoorsByNameSqlite() throws SQLException {
+        return database.getDoors("door" + (doorUIDs[next()] - 1));
+    }
+}
@@ -0,0 +1,137 @@
+package it.novaverse.bigdoorsdungeons;
+
+import nl.pim16aap2.bigDoors.Door;
+import nl.pim16aap2.bigDoors.util.DoorDirection;
+import nl.pim16aap2.bigDoors.util.DoorType;
+import nl.pim16aap2.bigDoors.util.RotateDirection;
+import org.bukkit.Location;
+import org.bukkit.World;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+// Temp SQLite file with the doors table of BigDoors, read the way its storage reads it:
+// a connection per call and a Door built per row. A copy of its queries without the owner joins,
+// SQLiteJDBCDriverConnection itself can't run without the BigDoors plugin
+final class SqliteDoors implements AutoCloseable {
+
+    private final Path file;
+    private final String url;
+    private final World world;
+    private final UUID ownerUUID = UUID.randomUUID();
+
+    SqliteDoors(World world, int doors) throws IOException, SQLException {
+        this.world = world;
+        file = Files.createTempFile("bigdoors", ".db");
+        url = "jdbc:sqlite:" + file;
+        try (var connection = DriverManager.getConnection(url)) {
+            connection.setAutoCommit(false);
+            try (var statement = connection.createStatement()) {
+                statement.execute("CREATE TABLE doors (id INTEGER PRIMARY KEY AUTOINCREMENT, name TEXT NOT NULL, world TEXT NOT NULL, "
+                        + "isOpen INTEGER NOT NULL, xMin INTEGER NOT NULL, yMin INTEGER NOT NULL, zMin INTEGER NOT NULL, "
+                        + "xMax INTEGER NOT NULL, yMax INTEGER NOT NULL, zMax INTEGER NOT NULL, "
+                        + "engineX INTEGER NOT NULL, engineY INTEGER NOT NULL, engineZ INTEGER NOT NULL, "
+                        + "isLocked INTEGER NOT NULL, type INTEGER NOT NULL, engineSide INTEGER NOT NULL, "
+                        + "powerBlockX INTEGER NOT NULL, powerBlockY INTEGER NOT NULL, powerBlockZ INTEGER NOT NULL, "
+                        + "openDirection INTEGER NOT NULL, autoClose INTEGER NOT NULL, chunkHash INTEGER NOT NULL, "
+                        + "blocksToMove INTEGER NOT NULL, notify INTEGER NOT NULL, bypass_protections INTEGER NOT NULL)");
+                statement.execute("CREATE INDEX doors_name ON doors (name)");
+                statement.execute("CREATE INDEX doors_world ON doors (world)");
+            }
+            try (var insert = connection.prepareStatement("INSERT INTO doors (name, world, isOpen, xMin, yMin, zMin, xMax, yMax, zMax, "
+                    + "engineX, engineY, engineZ, isLocked, type, engineSide, powerBlockX, powerBlockY, powerBlockZ, "
+                    + "openDirection, autoClose, chunkHash, blocksToMove, notify, bypass_protections) "
+                    + "VALUES (?, ?, 0, ?, 64, ?, ?, 66, ?, ?, 64, ?, 0, 0, 0, ?, 63, ?, 0, 0, 0, 0, 0, 0)")) {
+                for (var i = 0; i < doors; i++) {
+                    var x = (i % 1000) * 6;
+                    var z = (i / 1000) * 6;
+                    insert.setString(1, "door" + i);
+                    insert.setString(2, world.getUID().toString());
+                    insert.setInt(3, x);
+                    insert.setInt(4, z);
+                    insert.setInt(5, x + 2);
+                    insert.setInt(6, z);
+                    insert.setInt(7, x);
+                    insert.setInt(8, z);
+                    insert.setInt(9, x);
+                    insert.setInt(10, z);
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+            }
+            connection.commit();
+        }
+    }
+
+    Door getDoor(long doorUID) throws SQLException {
+        try (var connection = DriverManager.getConnection(url);
+             var statement = connection.prepareStatement("SELECT * FROM doors WHERE id = ?")) {
+            statement.setLong(1, doorUID);
+            try (var rows = statement.executeQuery()) {
+                return rows.next() ? toDoor(rows) : null;
+            }
+        }
+    }
+
+    ArrayList<Door> getDoors(String name) throws SQLException {
+        try (var connection = DriverManager.getConnection(url);
+             var statement = connection.prepareStatement("SELECT * FROM doors WHERE name = ?")) {
+            statement.setString(1, name);
+            return toDoors(statement.executeQuery());
+        }
+    }
+
+    Set<Door> getDoors() throws SQLException {
+        try (var connection = DriverManager.getConnection(url);
+             var statement = connection.prepareStatement("SELECT * FROM doors")) {
+            return new HashSet<>(toDoors(statement.executeQuery()));
+        }
+    }
+
+    private ArrayList<Door> toDoors(ResultSet rows) throws SQLException {
+        try (rows) {
+            var doors = new ArrayList<Door>();
+            while (rows.next()) {
+                doors.add(toDoor(rows));
+            }
+            return doors;
+        }
+    }
+
+    private Door toDoor(ResultSet rows) throws SQLException {
+        return new Door(
+                ownerUUID,
+                "player",
+                ownerUUID,
+                world,
+                new Location(world, rows.getInt("xMin"), rows.getInt("yMin"), rows.getInt("zMin")),
+                new Location(world, rows.getInt("xMax"), rows.getInt("yMax"), rows.getInt("zMax")),
+                new Location(world, rows.getInt("engineX"), rows.getInt("engineY"), rows.getInt("engineZ")),
+                rows.getString("name"),
+                rows.getInt("isOpen") == 1,
+                rows.getLong("id"),
+                rows.getInt("isLocked") == 1,
+                0,
+                DoorType.DOOR,
+                DoorDirection.NORTH,
+                new Location(world, rows.getInt("powerBlockX"), rows.getInt("powerBlockY"), rows.getInt("powerBlockZ")),
+                RotateDirection.NONE,
+                rows.getInt("autoClose"),
+                rows.getInt("notify") == 1,
+                rows.getInt("bypass_protections") == 1
+        );
+    }
+
+    @Override
+    public void close() throws IOException {
+        Files.deleteIfExists(file);
+    }
+}
@@ -0,0 +1,150 @@
+package it.novaverse.bigdoorsdungeons;
+
+import nl.pim16aap2.bigDoors.Door;
+import org.bukkit.World;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+// Storage paths served by the virtual door index, with the given number of instances loaded.
+// Run with -prof gc, gc.alloc.rate.norm is the bytes allocated per call
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VirtualDoorBenchmark {
+
+    private static final int SAMPLES = 1024;
+
+    @Param({"10", "100"})
+    public int instances;
+
+    @Param({"50", "500"})
+    public int doorsPerInstance;
+
+    private VirtualDoorIndex index;
+    private DungeonTemplate template;
+    private World[] worlds;
+    private PermissionCache.Grants grants;
+
+    // Doors looked up, picked at random across every instance
+    private long[] doorUIDs;
+    private UUID[] worldUIDs;
+    private String[] baseNames;
+    private String[] names;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        index = new VirtualDoorIndex();
+        template = TestDoors.dungeon("dungeon", doorsPerInstance);
+        worlds = new World[instances];
+        for (var i = 0; i < instances; i++) {
+            worlds[i] = TestDoors.world("dungeon_" + i);
+            load(worlds[i]);
+        }
+
+        var random = new Random(42);
+        doorUIDs = new long[SAMPLES];
+        worldUIDs = new UUID[SAMPLES];
+        baseNames = new String[SAMPLES];
+        names = new String[SAMPLES];
+        var grantedDoors = new HashSet<String>();
+        for (var i = 0; i < SAMPLES; i++) {
+            var world = worlds[random.nextInt(instances)];
+            var baseName = template.doors().get(random.nextInt(doorsPerInstance)).name();
+            doorUIDs[i] = index.getUIDByName(world.getUID(), baseName);
+            worldUIDs[i] = world.getUID();
+            baseNames[i] = baseName;
+            names[i] = baseName + "_" + world.getName();
+            if (i % 2 == 0) {
+                grantedDoors.add(baseName);
+            }
+        }
+        // A player allowed to use some doors of the dungeon, the common case on our servers
+        grants = new PermissionCache.Grants(false, false, Set.of(), Map.of(template.name(), grantedDoors));
+    }
+
+    private void load(World world) {
+        var firstDoorUID = index.reserve(world.getUID(), template.size());
+        index.addAll(world, template.name(), "_" + world.getName(), firstDoorUID, template.doors());
+    }
+
+    private int next() {
+        return next = (next + 1) & (SAMPLES - 1);
+    }
+
+    @Benchmark
+    public Door getDoor() {
+        return index.get(doorUIDs[next()]);
+    }
+
+    // HookedDoorStorage copies the world's doors into the list BigDoors expects
+    @Benchmark
+    public ArrayList<Door> getDoorsInWorld() {
+        return new ArrayList<>(index.getInWorld(worldUIDs[next()]));
+    }
+
+    @Benchmark
+    public List<Door> getDoorsByName() {
+        return index.getByName(names[next()]);
+    }
+
+    // What HookedDoorStorage.getPermission does for a virtual door, once the instance is known
+    @Benchmark
+    public int getPermission() {
+        return grants.getPermission(template.name(), index.getBaseName(doorUIDs[next()]));
+    }
+
+    // What a placeholder request resolves when its cached value is gone: the world's version and the door's UID
+    @Benchmark
+    public long placeholder() {
+        var i = next();
+        return index.getVersion(worldUIDs[i]) + index.getUIDByName(worldUIDs[i], baseNames[i]);
+    }
+
+    @Benchmark
+    public long loadVirtualDoors(NewInstance instance) {
+        var firstDoorUID = index.reserve(instance.world.getUID(), template.size());
+        index.addAll(instance.world, template.name(), "_" + instance.world.getName(), firstDoorUID, template.doors());
+        return firstDoorUID;
+    }
+
+    @Benchmark
+    public List<Door> removeDoorsFromWorld(LoadedInstance instance) {
+        return index.removeWorld(instance.world.getUID());
+    }
+
+    // An instance loaded by the benchmark and unloaded after it
+    @State(Scope.Thread)
+    public static class NewInstance {
+
+        private World world;
+
+        @Setup(Level.Invocation)
+        public void setUp() {
+            world = TestDoors.world("instance");
+        }
+
+        @TearDown(Level.Invocation)
+        public void tearDown(VirtualDoorBenchmark benchmark) {
+            benchmark.index.removeWorld(world.getUID());
+        }
+    }
+
+    // An instance loaded before the benchmark unloads it
+    @State(Scope.Thread)
+    public static class LoadedInstance {
+
+        private World world;
+
+        @Setup(Level.Invocation)
+        public void setUp(VirtualDoorBenchmark benchmark) {
+            world = TestDoors.world("instance");
+            benchmark.load(world);
+        }
+    }
+}
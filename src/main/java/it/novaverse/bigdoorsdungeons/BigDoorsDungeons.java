@@ -13,12 +13,27 @@ import org.bukkit.event.Listener;
 import org.bukkit.event.world.WorldLoadEvent;
 import org.bukkit.event.world.WorldUnloadEvent;
 import org.bukkit.plugin.java.JavaPlugin;
+import org.jetbrains.annotations.Nullable;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Predicate;
 
 public final class BigDoorsDungeons extends JavaPlugin implements Listener {
 
+    private static final DungeonInstanceIndex<Instance> INSTANCE_INDEX = new DungeonInstanceIndex<>(BigDoorsDungeons::scanDungeonInstances, Instance::getInstanceWorld);
+    private static final DoorStats STATS = new DoorStats();
+
+    private DoorTemplateWriter templateWriter;
+    private DoorTemplateWatcher templateWatcher;
+    private PermissionCache permissions;
+    private LuckPermsHook luckPerms;
     private HookedDoorStorage hookedDoorStorage;
+    private PowerBlockCacheBridge powerBlockCache;
+    private DoorLoader doorLoader;
     private BigDoorsDungeonsPlaceholders placeholders;
 
     @Override
@@ -26,7 +41,17 @@ public final class BigDoorsDungeons extends JavaPlugin implements Listener {
         saveDefaultConfig();
         reloadConfig();
 
-        hookedDoorStorage = new HookedDoorStorage(this, BigDoors.get(), BigDoors.get().getConfigLoader().dbFile());
+        var templateStorage = new DoorTemplateStorage(getDataFolder().toPath().resolve("dungeons"));
+        if (!migrateLegacyDoors(templateStorage)) {
+            getServer().getPluginManager().disablePlugin(this); // BigDoors keeps its own storage
+            return;
+        }
+        recoverJournals(templateStorage);
+        templateWriter = new DoorTemplateWriter(templateStorage, getSLF4JLogger());
+        permissions = new PermissionCache(this);
+        permissions.refreshAll(); // Players already online after a reload
+        var realDoors = getConfig().getBoolean("real-door-cache.enabled", true) ? new RealDoorCache(getConfig().getInt("real-door-cache.max-entries", 10000)) : null;
+        hookedDoorStorage = new HookedDoorStorage(this, BigDoors.get(), BigDoors.get().getConfigLoader().dbFile(), templateStorage, templateWriter, STATS, permissions, realDoors, getConfig().getBoolean("write-behind.enabled", false));
         try {
             FieldUtils.writeDeclaredField(BigDoors.get(), "db", hookedDoorStorage, true);
             FieldUtils.writeDeclaredField(BigDoors.get().getCommander(), "db", hookedDoorStorage, true);
@@ -34,11 +59,48 @@ public final class BigDoorsDungeons extends JavaPlugin implements Listener {
             throw new RuntimeException(e);
         }
 
+        if (getConfig().getBoolean("hot-reload", true)) {
+            try {
+                templateWatcher = new DoorTemplateWatcher(templateStorage, hookedDoorStorage, getSLF4JLogger());
+                templateWatcher.start();
+            } catch (IOException e) {
+                getSLF4JLogger().error("Unable to watch the dungeons folder, door files won't be reloaded", e);
+            }
+        }
+
+        var updates = hookedDoorStorage.getDoorUpdateQueue();
+        if (updates != null) {
+            var flushIntervalTicks = getConfig().getLong("write-behind.flush-interval-ticks", 20);
+            getServer().getScheduler().runTaskTimerAsynchronously(this, updates, flushIntervalTicks, flushIntervalTicks);
+        }
+
+        powerBlockCache = new PowerBlockCacheBridge(BigDoors.get(), hookedDoorStorage);
+        doorLoader = new DoorLoader(this, hookedDoorStorage, powerBlockCache, STATS, getConfig().getLong("loader.tick-budget-millis", 2), getConfig().getInt("loader.instance-timeout-ticks", 200));
+        getServer().getScheduler().runTaskTimer(this, doorLoader, 1, 1);
+
+        if (getServer().getPluginManager().isPluginEnabled("LuckPerms")) {
+            try {
+                luckPerms = new LuckPermsHook(this, permissions);
+                if (!luckPerms.register()) {
+                    luckPerms = null;
+                }
+            } catch (Throwable t) {
+                luckPerms = null;
+                getSLF4JLogger().error("Unable to hook into LuckPerms!", t);
+            }
+        }
+        if (luckPerms == null) {
+            var permissionRefreshTicks = getConfig().getLong("permissions.refresh-ticks", 100);
+            getServer().getScheduler().runTaskTimer(this, permissions, permissionRefreshTicks, permissionRefreshTicks);
+        }
+
         getServer().getPluginManager().registerEvents(this, this);
+        getServer().getPluginManager().registerEvents(permissions, this);
+        getCommand("bigdoorsdungeons").setExecutor(new BigDoorsDungeonsCommand(this, hookedDoorStorage, STATS));
 
         if (getServer().getPluginManager().isPluginEnabled("PlaceholderAPI")) {
             try {
-                placeholders = new BigDoorsDungeonsPlaceholders(this, hookedDoorStorage);
+                placeholders = new BigDoorsDungeonsPlaceholders(this, hookedDoorStorage, STATS);
                 placeholders.register();
             } catch (Throwable t) {
                 getSLF4JLogger().error("Unable to hook into PlaceholderAPI!", t);
@@ -56,39 +118,112 @@ public final class BigDoorsDungeons extends JavaPlugin implements Listener {
             }
         }
 
-        try {
-            var db = new SQLiteJDBCDriverConnection(BigDoors.get(), BigDoors.get().getConfigLoader().dbFile());
-            FieldUtils.writeDeclaredField(BigDoors.get(), "db", db, true);
-            FieldUtils.writeDeclaredField(BigDoors.get().getCommander(), "db", new SQLiteJDBCDriverConnection(BigDoors.get(), BigDoors.get().getConfigLoader().dbFile()), true);
-            BigDoors.get().getPBCache().reinit(BigDoors.get().getConfigLoader().cacheTimeout()); // Re-init cache
-        } catch (Throwable t) {
-            getSLF4JLogger().error("Unable to restore default SQL storage...", t);
+        if (luckPerms != null) {
+            try {
+                luckPerms.unregister();
+            } catch (Throwable t) {
+                getSLF4JLogger().error("Unable to unhook from LuckPerms...", t);
+            }
+        }
+
+        var updates = hookedDoorStorage == null ? null : hookedDoorStorage.getDoorUpdateQueue();
+        if (updates != null) {
+            try {
+                updates.flush(); // Queued real door updates, before BigDoors goes back to its own storage
+            } catch (Throwable t) {
+                getSLF4JLogger().error("Unable to write queued door updates...", t);
+            }
+        }
+
+        if (hookedDoorStorage != null) {
+            try {
+                var db = new SQLiteJDBCDriverConnection(BigDoors.get(), BigDoors.get().getConfigLoader().dbFile());
+                FieldUtils.writeDeclaredField(BigDoors.get(), "db", db, true);
+                FieldUtils.writeDeclaredField(BigDoors.get().getCommander(), "db", new SQLiteJDBCDriverConnection(BigDoors.get(), BigDoors.get().getConfigLoader().dbFile()), true);
+                if (powerBlockCache != null) {
+                    powerBlockCache.evictAll(); // Real doors keep their cached power blocks
+                }
+            } catch (Throwable t) {
+                getSLF4JLogger().error("Unable to restore default SQL storage...", t);
+            }
+        }
+
+        if (templateWatcher != null) {
+            templateWatcher.close();
+        }
+        if (templateWriter != null) {
+            templateWriter.close(); // Flush pending door saves
+        }
+
+        if (permissions != null) {
+            permissions.clear();
         }
 
         hookedDoorStorage = null;
+        permissions = null;
+        luckPerms = null;
+        powerBlockCache = null;
+        doorLoader = null;
         placeholders = null;
+        templateWriter = null;
+        templateWatcher = null;
+        INSTANCE_INDEX.clear();
     }
 
-    @EventHandler(priority = EventPriority.MONITOR)
-    public void onWorldLoad(WorldLoadEvent event) {
-        var world = event.getWorld();
-
-        getServer().getScheduler().runTaskLater(this, () -> {
-            if (getServer().getWorld(world.getUID()) == null) {
-                return;
+    // False when the doors couldn't all be moved out of config.yml. Nothing reads them there anymore,
+    // so the files written so far are dropped and config.yml is left as is for the next start
+    private boolean migrateLegacyDoors(DoorTemplateStorage templateStorage) {
+        var worldsSection = getConfig().getConfigurationSection("worlds");
+        if (worldsSection == null) {
+            return true;
+        }
+        var dungeonNames = worldsSection.getKeys(false);
+        var written = new ArrayList<String>();
+        try {
+            for (var dungeonName : dungeonNames) {
+                if (!templateStorage.exists(dungeonName)) {
+                    written.add(dungeonName);
+                }
+                templateStorage.save(DungeonTemplate.load(dungeonName, worldsSection.getConfigurationSection(dungeonName)));
             }
-
-            var instance = getDungeonInstance(world);
-            if (instance == null) {
-                return;
+        } catch (IOException | RuntimeException e) {
+            getSLF4JLogger().error("Unable to migrate dungeon doors from config.yml, disabling", e);
+            for (var dungeonName : written) {
+                try {
+                    templateStorage.delete(dungeonName);
+                } catch (IOException deleteError) {
+                    getSLF4JLogger().error("Unable to delete the partially migrated doors of dungeon " + dungeonName, deleteError);
+                }
             }
+            return false;
+        }
+        getConfig().set("worlds", null);
+        saveConfig();
+        getSLF4JLogger().info("Migrated doors of " + dungeonNames.size() + " dungeons from config.yml to the dungeons folder");
+        return true;
+    }
 
-            var editMode = instance.isEditMode();
-            var dungeonName = instance.getDungeon().getWorldName();
+    private void recoverJournals(DoorTemplateStorage templateStorage) {
+        try {
+            for (var dungeonName : templateStorage.getJournaledDungeons()) {
+                var template = DoorJournal.replay(templateStorage.load(dungeonName), templateStorage.readJournal(dungeonName));
+                templateStorage.save(template);
+                templateStorage.deleteJournal(dungeonName);
+                getSLF4JLogger().info("Recovered unsaved door changes of dungeon " + dungeonName);
+            }
+        } catch (IOException | RuntimeException e) {
+            getSLF4JLogger().error("Unable to recover unsaved door changes", e);
+        }
+    }
 
-            var count = hookedDoorStorage.loadVirtualDoors(dungeonName, world, editMode);
-            getSLF4JLogger().info("Loaded dungeon " + world.getName() + " doors! (" + count + ")");
-        }, 20);
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onWorldLoad(WorldLoadEvent event) {
+        var world = event.getWorld();
+        if (!mayHostDungeonInstance(world)) {
+            return; // Main worlds and other plugins' worlds, the first lookup remembers them as plain
+        }
+        INSTANCE_INDEX.markLoading(world);
+        doorLoader.enqueue(world); // Picked up as soon as MythicDungeons registers the instance
     }
 
     @EventHandler(priority = EventPriority.LOWEST, ignoreCancelled = true)
@@ -102,18 +237,44 @@ public final class BigDoorsDungeons extends JavaPlugin implements Listener {
         var dungeon = instance.getDungeon();
         var editMode = instance.isEditMode();
 
-        if (editMode) {
+        // Doors still being built would be saved as an empty dungeon
+        if (editMode && !doorLoader.isLoading(world)) {
             var count = hookedDoorStorage.saveVirtualDoors(world, dungeon.getWorldName());
             getSLF4JLogger().info("Saved dungeon " + world.getName() + " doors! (" + count + ")");
         }
+    }
+
+    // Once the unload can't be cancelled anymore. Doesn't depend on the instance, MythicDungeons may have dropped it already
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onWorldUnloaded(WorldUnloadEvent event) {
+        var world = event.getWorld();
+        doorLoader.cancel(world);
+
+        var removed = hookedDoorStorage.removeVirtualDoors(world);
+        if (!removed.isEmpty()) {
+            getSLF4JLogger().info("Removed " + removed.size() + " doors from dungeon world " + world.getName());
+            powerBlockCache.evict(removed);
+        }
+        INSTANCE_INDEX.remove(world);
+    }
 
-        getSLF4JLogger().info("Removing doors from dungeon world " + world.getName());
-        var cache = BigDoors.get().getPBCache();
-        hookedDoorStorage.removeDoorsFromWorld(world)
-                .forEach(door -> cache.invalidate(door.getDoorUID()));
+    public static List<String> verifyDungeonInstances(Predicate<UUID> isWorldLoaded) {
+        return INSTANCE_INDEX.verify(isWorldLoaded);
     }
 
     public static Instance getDungeonInstance(World world) {
+        var start = System.nanoTime();
+        var instance = INSTANCE_INDEX.get(world);
+        STATS.record(DoorStats.Op.GET_DUNGEON_INSTANCE, start);
+        return instance;
+    }
+
+    public static int getDungeonInstanceCount() {
+        return INSTANCE_INDEX.size();
+    }
+
+    @Nullable
+    private static Instance scanDungeonInstances(World world) {
         return MythicDungeons.inst().getDungeons().getAll().stream()
                 .map(Dungeon::getInstances)
                 .flatMap(Collection::stream)
@@ -122,6 +283,31 @@ public final class BigDoorsDungeons extends JavaPlugin implements Listener {
                 .orElse(null);
     }
 
+    // MythicDungeons names instance worlds after the world of their dungeon
+    private static boolean mayHostDungeonInstance(World world) {
+        var worldName = world.getName();
+        return MythicDungeons.inst().getDungeons().getAll().stream()
+                .anyMatch(dungeon -> worldName.startsWith(dungeon.getWorldName()));
+    }
+
+    // Lookup of a loaded world's instance, the world stops being pending once it's found
+    static Instance resolveDungeonInstance(World world) {
+        return INSTANCE_INDEX.resolve(world);
+    }
+
+    @Nullable
+    public BigDoorsDungeonsPlaceholders getPlaceholders() {
+        return placeholders;
+    }
+
+    public DoorLoader getDoorLoader() {
+        return doorLoader;
+    }
+
+    public PermissionCache getPermissionCache() {
+        return permissions;
+    }
+
     @SuppressWarnings("BooleanMethodIsAlwaysInverted")
     public static boolean isDungeonWorld(World world) {
         return getDungeonInstance(world) != null;
@@ -0,0 +1,210 @@
+package it.novaverse.bigdoorsdungeons;
+
+import it.novaverse.bigdoorsdungeons.DoorStats.Op;
+import it.novaverse.bigdoorsdungeons.DoorStats.Source;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.format.NamedTextColor;
+import org.bukkit.World;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandSender;
+import org.bukkit.command.TabExecutor;
+import org.bukkit.entity.Player;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Predicate;
+
+public class BigDoorsDungeonsCommand implements TabExecutor {
+
+    private static final int IDENTIFY_RANGE = 16;
+    private static final int LIST_PAGE_SIZE = 10;
+
+    private final BigDoorsDungeons plugin;
+    private final HookedDoorStorage storage;
+    private final DoorStats stats;
+
+    public BigDoorsDungeonsCommand(BigDoorsDungeons plugin, HookedDoorStorage storage, DoorStats stats) {
+        this.plugin = plugin;
+        this.storage = storage;
+        this.stats = stats;
+    }
+
+    @Override
+    public boolean onCommand(@NotNull CommandSender sender, @NotNull Command command, @NotNull String label, @NotNull String[] args) {
+        if (args.length == 0) {
+            return false;
+        }
+        switch (args[0].toLowerCase()) {
+            case "stats" -> {
+                if (args.length > 1 && args[1].equalsIgnoreCase("reset")) {
+                    stats.reset();
+                    var realDoors = storage.getRealDoorCache();
+                    if (realDoors != null) {
+                        realDoors.resetStats();
+                    }
+                    sender.sendMessage(Component.text("Stats reset", NamedTextColor.GREEN));
+                } else {
+                    sendStats(sender);
+                }
+            }
+            case "verify" -> verify(sender);
+            case "identify" -> identify(sender);
+            case "list" -> list(sender, args);
+            default -> {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public List<String> onTabComplete(@NotNull CommandSender sender, @NotNull Command command, @NotNull String label, @NotNull String[] args) {
+        if (args.length == 1) {
+            return filter(List.of("stats", "verify", "identify", "list"), args[0]);
+        }
+        if (args.length == 2 && args[0].equalsIgnoreCase("stats")) {
+            return filter(List.of("reset"), args[1]);
+        }
+        return List.of();
+    }
+
+    private void sendStats(CommandSender sender) {
+        var doorLoader = plugin.getDoorLoader();
+        sender.sendMessage(Component.text("BigDoorsDungeons stats", NamedTextColor.GOLD));
+        sender.sendMessage(Component.text("Instances: " + BigDoorsDungeons.getDungeonInstanceCount()
+                + ", virtual doors: " + storage.getVirtualDoorCount()
+                + ", loader queue: " + doorLoader.getQueueDepth(), NamedTextColor.YELLOW));
+        var realDoors = storage.getRealDoorCache();
+        if (realDoors != null) {
+            var lookups = realDoors.getHits() + realDoors.getMisses();
+            sender.sendMessage(Component.text("Real door cache: " + realDoors.size() + "/" + realDoors.getMaxEntries() + " entries, "
+                    + realDoors.getHits() + " hits, " + realDoors.getMisses() + " misses"
+                    + (lookups == 0 ? "" : " (" + realDoors.getHits() * 100 / lookups + "% hit rate)"), NamedTextColor.YELLOW));
+        } else {
+            sender.sendMessage(Component.text("Real door cache: disabled", NamedTextColor.YELLOW));
+        }
+        var updates = storage.getDoorUpdateQueue();
+        if (updates != null) {
+            sender.sendMessage(Component.text("Queued real door updates: " + updates.size(), NamedTextColor.YELLOW));
+        }
+
+        for (var world : plugin.getServer().getWorlds()) {
+            var count = storage.getVirtualDoorCount(world);
+            if (count == 0) {
+                continue;
+            }
+            var latency = doorLoader.getLoadLatencyMillis(world);
+            sender.sendMessage(Component.text(" " + world.getName() + ": " + count + " doors"
+                    + (latency == null ? "" : ", loaded in " + latency + "ms"), NamedTextColor.GRAY));
+        }
+
+        for (var op : Op.values()) {
+            var line = Component.text(op.key() + ": ", NamedTextColor.YELLOW);
+            var recorded = false;
+            for (var source : op.isSplit() ? Source.values() : new Source[]{Source.VIRTUAL}) {
+                var timer = stats.get(op, source);
+                if (timer.count() == 0) {
+                    continue;
+                }
+                recorded = true;
+                line = line.append(Component.text((op.isSplit() ? source.key() + " " : "") + timer.count()
+                        + "x avg " + DoorStats.formatNanos(timer.averageNanos())
+                        + " p99 " + DoorStats.formatNanos(timer.percentileNanos(99))
+                        + " max " + DoorStats.formatNanos(timer.maxNanos()) + "  ", NamedTextColor.GRAY));
+            }
+            if (recorded) {
+                sender.sendMessage(line);
+            }
+        }
+    }
+
+    // Meant to be run after a churn of instances, every problem reported here is a leak or a broken index
+    private void verify(CommandSender sender) {
+        Predicate<UUID> isWorldLoaded = worldUID -> plugin.getServer().getWorld(worldUID) != null;
+        var problems = new ArrayList<String>();
+        problems.addAll(storage.verifyVirtualDoors(isWorldLoaded));
+        problems.addAll(BigDoorsDungeons.verifyDungeonInstances(isWorldLoaded));
+        problems.addAll(plugin.getPermissionCache().verify());
+        var placeholders = plugin.getPlaceholders();
+        if (placeholders != null) {
+            problems.addAll(placeholders.verify());
+        }
+
+        var runtime = Runtime.getRuntime();
+        var usedHeapMegabytes = (runtime.totalMemory() - runtime.freeMemory()) / (1024 * 1024);
+        sender.sendMessage(Component.text(storage.getVirtualDoorCount() + " virtual doors in "
+                + BigDoorsDungeons.getDungeonInstanceCount() + " instances, loader queue " + plugin.getDoorLoader().getQueueDepth()
+                + ", heap used " + usedHeapMegabytes + "MB", NamedTextColor.GOLD));
+        if (problems.isEmpty()) {
+            sender.sendMessage(Component.text("No leaks found", NamedTextColor.GREEN));
+            return;
+        }
+        problems.forEach(problem -> sender.sendMessage(Component.text(problem, NamedTextColor.RED)));
+    }
+
+    // list [page] [dungeon:<dungeon>] [world:<world>]
+    private void list(CommandSender sender, String[] args) {
+        var page = 1;
+        String dungeonName = null;
+        World world = null;
+        for (var i = 1; i < args.length; i++) {
+            var arg = args[i];
+            if (arg.startsWith("dungeon:")) {
+                dungeonName = arg.substring("dungeon:".length());
+            } else if (arg.startsWith("world:")) {
+                world = plugin.getServer().getWorld(arg.substring("world:".length()));
+                if (world == null) {
+                    sender.sendMessage(Component.text("Unknown world " + arg.substring("world:".length()), NamedTextColor.RED));
+                    return;
+                }
+            } else {
+                try {
+                    page = Math.max(Integer.parseInt(arg), 1);
+                } catch (NumberFormatException e) {
+                    sender.sendMessage(Component.text("Invalid page " + arg, NamedTextColor.RED));
+                    return;
+                }
+            }
+        }
+
+        var doors = storage.getVirtualDoors(dungeonName, world, (long) (page - 1) * LIST_PAGE_SIZE, LIST_PAGE_SIZE);
+        if (doors.isEmpty()) {
+            sender.sendMessage(Component.text("No virtual doors on page " + page, NamedTextColor.YELLOW));
+            return;
+        }
+        sender.sendMessage(Component.text("Virtual doors, page " + page, NamedTextColor.GOLD));
+        for (var door : doors) {
+            sender.sendMessage(Component.text(" " + door.getName() + " (" + door.getDoorUID() + ") in " + door.getWorld().getName(), NamedTextColor.GRAY));
+        }
+    }
+
+    // Virtual doors covering the block the player is looking at
+    private void identify(CommandSender sender) {
+        if (!(sender instanceof Player player)) {
+            sender.sendMessage(Component.text("Only players can identify doors", NamedTextColor.RED));
+            return;
+        }
+        var block = player.getTargetBlockExact(IDENTIFY_RANGE);
+        if (block == null) {
+            sender.sendMessage(Component.text("Look at a block within " + IDENTIFY_RANGE + " blocks", NamedTextColor.RED));
+            return;
+        }
+        var doors = storage.getVirtualDoorsAt(block.getLocation());
+        if (doors.isEmpty()) {
+            sender.sendMessage(Component.text("No virtual door covers this block", NamedTextColor.YELLOW));
+            return;
+        }
+        for (var door : doors) {
+            sender.sendMessage(Component.text(door.getName() + " (" + door.getDoorUID() + "), " + door.getType()
+                    + (door.isOpen() ? ", open" : ", closed") + (door.isLocked() ? ", locked" : ""), NamedTextColor.GOLD));
+        }
+    }
+
+    private static List<String> filter(List<String> options, String prefix) {
+        return options.stream()
+                .filter(option -> option.startsWith(prefix.toLowerCase()))
+                .toList();
+    }
+}
@@ -1,19 +1,51 @@
 package it.novaverse.bigdoorsdungeons;
 
+import it.novaverse.bigdoorsdungeons.DoorStats.Op;
+import it.novaverse.bigdoorsdungeons.DoorStats.Source;
 import me.clip.placeholderapi.expansion.PlaceholderExpansion;
 import org.bukkit.OfflinePlayer;
 import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerChangedWorldEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 @SuppressWarnings("UnstableApiUsage")
-public class BigDoorsDungeonsPlaceholders extends PlaceholderExpansion {
+public class BigDoorsDungeonsPlaceholders extends PlaceholderExpansion implements Listener {
+
+    private static final String DOOR_ID_SUFFIX = "_id";
+    private static final String STATS_PREFIX = "stats_";
 
     private final BigDoorsDungeons plugin;
     private final HookedDoorStorage storage;
+    private final DoorStats stats;
+
+    // Resolved placeholder values per player, valid while they stay in the same world and no door of that world is added or removed
+    private final Map<UUID, ResolvedPlaceholders> resolved;
 
-    public BigDoorsDungeonsPlaceholders(BigDoorsDungeons plugin, HookedDoorStorage storage) {
+    public BigDoorsDungeonsPlaceholders(BigDoorsDungeons plugin, HookedDoorStorage storage, DoorStats stats) {
         this.plugin = plugin;
         this.storage = storage;
+        this.stats = stats;
+        resolved = new ConcurrentHashMap<>();
+    }
+
+    @Override
+    public boolean register() {
+        if (!super.register()) {
+            return false;
+        }
+        plugin.getServer().getPluginManager().registerEvents(this, plugin);
+        return true;
     }
 
     @Override
@@ -38,27 +70,130 @@ public class BigDoorsDungeonsPlaceholders extends PlaceholderExpansion {
 
     @Override
     public String onRequest(OfflinePlayer offlinePlayer, @NotNull String params) {
+        if (params.startsWith(STATS_PREFIX)) {
+            return onStatsRequest(offlinePlayer, params.substring(STATS_PREFIX.length()));
+        }
+
         if (!(offlinePlayer instanceof Player player)) {
             return "Offline";
         }
 
-        var instance = BigDoorsDungeons.getDungeonInstance(player.getWorld());
-        if (instance == null) {
+        var world = player.getWorld();
+        if (!BigDoorsDungeons.isDungeonWorld(world)) {
             return "Not_in_dungeon";
         }
 
-        if (params.endsWith("_id")) {
-            var doorName = params.split("_id", 2)[0];
-            if (!instance.isEditMode()) {
-                doorName = doorName + "_" + player.getWorld().getName();
+        if (!params.endsWith(DOOR_ID_SUFFIX)) {
+            return null;
+        }
+
+        var start = System.nanoTime();
+        var doorsVersion = storage.getVirtualDoorsVersion(world);
+        var playerResolved = resolved.get(player.getUniqueId());
+        if (playerResolved == null || !playerResolved.worldUID.equals(world.getUID()) || playerResolved.doorsVersion != doorsVersion) {
+            playerResolved = new ResolvedPlaceholders(world.getUID(), doorsVersion);
+            resolved.put(player.getUniqueId(), playerResolved);
+        }
+
+        var value = playerResolved.values.get(params);
+        if (value == null) {
+            var doorName = params.substring(0, params.length() - DOOR_ID_SUFFIX.length());
+            var doorUID = storage.getVirtualDoorUID(world, doorName);
+            value = doorUID == 0 ? "Unknown_door" : String.valueOf(doorUID);
+            playerResolved.values.put(params, value);
+        }
+        stats.record(Op.PLACEHOLDER, start);
+        return value;
+    }
+
+    // stats_instances, stats_doors, stats_world_doors, stats_loader_queue, stats_real_cache_<hits|misses|size>
+    // and stats_<op>[_virtual|_sqlite]_<count|avg|p99|max>, durations in nanoseconds
+    @Nullable
+    private String onStatsRequest(OfflinePlayer offlinePlayer, String stat) {
+        switch (stat) {
+            case "instances" -> {
+                return String.valueOf(BigDoorsDungeons.getDungeonInstanceCount());
+            }
+            case "doors" -> {
+                return String.valueOf(storage.getVirtualDoorCount());
             }
-            var door = storage.getVirtualDoorByName(doorName);
-            if (door == null) {
-                return "Unknown_door";
+            case "world_doors" -> {
+                return offlinePlayer instanceof Player player ? String.valueOf(storage.getVirtualDoorCount(player.getWorld())) : "Offline";
+            }
+            case "loader_queue" -> {
+                return String.valueOf(plugin.getDoorLoader().getQueueDepth());
+            }
+            case "real_cache_hits", "real_cache_misses", "real_cache_size" -> {
+                var realDoors = storage.getRealDoorCache();
+                if (realDoors == null) {
+                    return "Disabled";
+                }
+                return String.valueOf(switch (stat) {
+                    case "real_cache_hits" -> realDoors.getHits();
+                    case "real_cache_misses" -> realDoors.getMisses();
+                    default -> realDoors.size();
+                });
             }
-            return String.valueOf(door.getDoorUID());
         }
 
-        return null;
+        var metricSeparator = stat.lastIndexOf('_');
+        if (metricSeparator < 0) {
+            return null;
+        }
+        var opName = stat.substring(0, metricSeparator);
+        var source = Source.VIRTUAL;
+        for (var current : Source.values()) {
+            if (opName.endsWith("_" + current.key())) {
+                source = current;
+                opName = opName.substring(0, opName.length() - current.key().length() - 1);
+                break;
+            }
+        }
+        Op op;
+        try {
+            op = Op.valueOf(opName.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+
+        var timer = stats.get(op, source);
+        return switch (stat.substring(metricSeparator + 1)) {
+            case "count" -> String.valueOf(timer.count());
+            case "avg" -> String.valueOf(timer.averageNanos());
+            case "p99" -> String.valueOf(timer.percentileNanos(99));
+            case "max" -> String.valueOf(timer.maxNanos());
+            default -> null;
+        };
+    }
+
+    // Cached values of players that left, the quit listener should never let any through
+    public List<String> verify() {
+        return resolved.keySet().stream()
+                .filter(playerUUID -> plugin.getServer().getPlayer(playerUUID) == null)
+                .map(playerUUID -> "Placeholders still cached for offline player " + playerUUID)
+                .toList();
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onWorldChange(PlayerChangedWorldEvent event) {
+        resolved.remove(event.getPlayer().getUniqueId());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onQuit(PlayerQuitEvent event) {
+        resolved.remove(event.getPlayer().getUniqueId());
+    }
+
+    private static final class ResolvedPlaceholders {
+
+        private final UUID worldUID;
+        private final long doorsVersion;
+        private final Map<String, String> values;
+
+        private ResolvedPlaceholders(UUID worldUID, long doorsVersion) {
+            this.worldUID = worldUID;
+            this.doorsVersion = doorsVersion;
+            values = new ConcurrentHashMap<>();
+        }
     }
 }
@@ -0,0 +1,170 @@
+package it.novaverse.bigdoorsdungeons;
+
+import nl.pim16aap2.bigDoors.util.DoorDirection;
+import nl.pim16aap2.bigDoors.util.RotateDirection;
+import org.bukkit.util.Vector;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+
+import static it.novaverse.bigdoorsdungeons.DoorTemplateStorage.*;
+
+// Append-only log of the changes made to doors while a dungeon is in edit mode.
+// Every record is length-prefixed, so a record torn by a crash mid-append is simply ignored on replay.
+public final class DoorJournal {
+
+    private static final byte INSERT = 1;
+    private static final byte REMOVE = 2;
+    private static final byte COORDS = 3;
+    private static final byte POWER_BLOCK = 4;
+    private static final byte LOCKED = 5;
+    private static final byte OPEN_DIR = 6;
+    private static final byte AUTO_CLOSE = 7;
+    private static final byte NOTIFICATION = 8;
+    private static final byte BYPASS_PROTECTIONS = 9;
+    private static final byte BLOCKS_TO_MOVE = 10;
+
+    private DoorJournal() {
+    }
+
+    // Records
+
+    public static ByteBuffer insert(DoorTemplate door) {
+        return record(INSERT, door.name(), out -> writeDoor(out, door));
+    }
+
+    public static ByteBuffer remove(String name) {
+        return record(REMOVE, name, out -> {
+        });
+    }
+
+    public static ByteBuffer coords(String name, boolean open, int xMin, int yMin, int zMin, int xMax, int yMax, int zMax, DoorDirection engSide) {
+        return record(COORDS, name, out -> {
+            out.writeBoolean(open);
+            writeVector(out, new Vector(xMin, yMin, zMin));
+            writeVector(out, new Vector(xMax, yMax, zMax));
+            writeString(out, engSide.name());
+        });
+    }
+
+    public static ByteBuffer powerBlock(String name, int x, int y, int z) {
+        return record(POWER_BLOCK, name, out -> writeVector(out, new Vector(x, y, z)));
+    }
+
+    public static ByteBuffer locked(String name, boolean locked) {
+        return record(LOCKED, name, out -> out.writeBoolean(locked));
+    }
+
+    public static ByteBuffer openDir(String name, RotateDirection openDir) {
+        return record(OPEN_DIR, name, out -> writeString(out, openDir.name()));
+    }
+
+    public static ByteBuffer autoClose(String name, int autoClose) {
+        return record(AUTO_CLOSE, name, out -> out.writeInt(autoClose));
+    }
+
+    public static ByteBuffer notificationEnabled(String name, boolean notificationEnabled) {
+        return record(NOTIFICATION, name, out -> out.writeBoolean(notificationEnabled));
+    }
+
+    public static ByteBuffer bypassProtections(String name, boolean bypassProtections) {
+        return record(BYPASS_PROTECTIONS, name, out -> out.writeBoolean(bypassProtections));
+    }
+
+    public static ByteBuffer blocksToMove(String name, int blocksToMove) {
+        return record(BLOCKS_TO_MOVE, name, out -> out.writeInt(blocksToMove));
+    }
+
+    // Replay
+
+    public static DungeonTemplate replay(DungeonTemplate template, ByteBuffer journal) {
+        var doors = new LinkedHashMap<String, DoorTemplate>();
+        template.doors().forEach(door -> doors.put(door.name(), door));
+
+        while (journal.remaining() >= Integer.BYTES) {
+            var length = journal.getInt();
+            if (length < 0 || length > journal.remaining()) {
+                break; // Torn write, the server went down while appending
+            }
+            var record = journal.slice(journal.position(), length);
+            journal.position(journal.position() + length);
+
+            var op = record.get();
+            var name = readString(record);
+            switch (op) {
+                case INSERT -> {
+                    var door = readDoor(record);
+                    doors.put(door.name(), door);
+                }
+                case REMOVE -> doors.remove(name);
+                case COORDS -> {
+                    var open = record.get() != 0;
+                    var min = readVector(record);
+                    var max = readVector(record);
+                    var engSide = DoorDirection.valueOf(readString(record));
+                    doors.computeIfPresent(name, (key, door) -> door.withCoords(open, min, max, engSide));
+                }
+                case POWER_BLOCK -> {
+                    var powerBlock = readVector(record);
+                    doors.computeIfPresent(name, (key, door) -> door.withPowerBlock(powerBlock));
+                }
+                case LOCKED -> {
+                    var locked = record.get() != 0;
+                    doors.computeIfPresent(name, (key, door) -> door.withLocked(locked));
+                }
+                case OPEN_DIR -> {
+                    var openDir = RotateDirection.valueOf(readString(record));
+                    doors.computeIfPresent(name, (key, door) -> door.withOpenDir(openDir));
+                }
+                case AUTO_CLOSE -> {
+                    var autoClose = record.getInt();
+                    doors.computeIfPresent(name, (key, door) -> door.withAutoClose(autoClose));
+                }
+                case NOTIFICATION -> {
+                    var notificationEnabled = record.get() != 0;
+                    doors.computeIfPresent(name, (key, door) -> door.withNotificationEnabled(notificationEnabled));
+                }
+                case BYPASS_PROTECTIONS -> {
+                    var bypassProtections = record.get() != 0;
+                    doors.computeIfPresent(name, (key, door) -> door.withBypassProtections(bypassProtections));
+                }
+                case BLOCKS_TO_MOVE -> {
+                    var blocksToMove = record.getInt();
+                    doors.computeIfPresent(name, (key, door) -> door.withBlocksToMove(blocksToMove));
+                }
+                default -> {
+                    // Unknown record from a newer version, skip it
+                }
+            }
+        }
+
+        return new DungeonTemplate(template.name(), new ArrayList<>(doors.values()));
+    }
+
+    private static ByteBuffer record(byte op, String name, RecordWriter payload) {
+        try {
+            var bytes = new ByteArrayOutputStream(64);
+            var out = new DataOutputStream(bytes);
+            out.writeInt(0); // Length placeholder
+            out.writeByte(op);
+            writeString(out, name);
+            payload.write(out);
+            out.flush();
+            var buffer = ByteBuffer.wrap(bytes.toByteArray());
+            buffer.putInt(0, buffer.remaining() - Integer.BYTES);
+            return buffer;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // In-memory stream, can't happen
+        }
+    }
+
+    @FunctionalInterface
+    private interface RecordWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+}
@@ -0,0 +1,153 @@
+package it.novaverse.bigdoorsdungeons;
+
+import net.playavalon.mythicdungeons.dungeons.Instance;
+import org.bukkit.World;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// Publishes the virtual doors of dungeon worlds on the main thread, within a per-tick time budget.
+// A world is probed at a doubling, capped interval until MythicDungeons registers its instance or the world unloads.
+// An instance is published in one step, the budget is checked between instances.
+public class DoorLoader implements Runnable {
+
+    // Instances are usually registered within a few ticks of their world, later ones are probed this often
+    private static final int MAX_PROBE_INTERVAL_TICKS = 10;
+
+    private final BigDoorsDungeons plugin;
+    private final HookedDoorStorage storage;
+    private final PowerBlockCacheBridge powerBlockCache;
+    private final DoorStats stats;
+    private final long tickBudgetNanos;
+    private final int instanceTimeoutTicks;
+
+    // Main thread only
+    private final Deque<PendingLoad> queue;
+    // Ticks run with something queued
+    private long tick;
+    private volatile int queueDepth;
+    // Time from world load to usable doors, per loaded instance world
+    private final Map<UUID, Long> loadLatencies;
+
+    public DoorLoader(BigDoorsDungeons plugin, HookedDoorStorage storage, PowerBlockCacheBridge powerBlockCache, DoorStats stats, long tickBudgetMillis, int instanceTimeoutTicks) {
+        this.plugin = plugin;
+        this.storage = storage;
+        this.powerBlockCache = powerBlockCache;
+        this.stats = stats;
+        this.tickBudgetNanos = TimeUnit.MILLISECONDS.toNanos(tickBudgetMillis);
+        this.instanceTimeoutTicks = instanceTimeoutTicks;
+        queue = new ArrayDeque<>();
+        loadLatencies = new ConcurrentHashMap<>();
+    }
+
+    public void enqueue(World world) {
+        queue.add(new PendingLoad(world, System.nanoTime(), tick));
+        queueDepth = queue.size();
+    }
+
+    public void cancel(World world) {
+        queue.removeIf(load -> load.world.equals(world));
+        queueDepth = queue.size();
+        loadLatencies.remove(world.getUID());
+    }
+
+    public boolean isLoading(World world) {
+        return queue.stream().anyMatch(load -> load.world.equals(world));
+    }
+
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    @Nullable
+    public Long getLoadLatencyMillis(World world) {
+        return loadLatencies.get(world.getUID());
+    }
+
+    public Map<UUID, Long> getLoadLatencies() {
+        return Collections.unmodifiableMap(loadLatencies);
+    }
+
+    @Override
+    public void run() {
+        if (queue.isEmpty()) {
+            return;
+        }
+        tick++;
+        var start = System.nanoTime();
+        var deadline = start + tickBudgetNanos;
+        var iterator = queue.iterator();
+        // At least one instance is published every tick, however small the budget
+        var worked = false;
+        while (iterator.hasNext() && (!worked || System.nanoTime() < deadline)) {
+            var load = iterator.next();
+            if (plugin.getServer().getWorld(load.world.getUID()) == null) {
+                iterator.remove(); // Unloaded before its doors were ready
+                continue;
+            }
+
+            if (load.instance == null) {
+                if (tick < load.nextProbeTick) {
+                    continue;
+                }
+                if (!start(load)) {
+                    // Still probed, a miss cached now would leave a late instance without doors for good
+                    if (!load.warned && tick - load.enqueuedTick > instanceTimeoutTicks) {
+                        load.warned = true;
+                        plugin.getSLF4JLogger().warn("No dungeon instance registered for world " + load.world.getName() + " after " + instanceTimeoutTicks + " ticks, still waiting");
+                    }
+                    load.probeIntervalTicks = Math.min(load.probeIntervalTicks * 2, MAX_PROBE_INTERVAL_TICKS);
+                    load.nextProbeTick = tick + load.probeIntervalTicks;
+                    continue;
+                }
+            }
+
+            storage.addVirtualDoors(load.world, load.instance.isEditMode(), load.firstDoorUID, load.template);
+            powerBlockCache.warm(load.world);
+            worked = true;
+            var latencyMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - load.enqueuedAt);
+            loadLatencies.put(load.world.getUID(), latencyMillis);
+            iterator.remove();
+            plugin.getSLF4JLogger().info("Loaded dungeon " + load.world.getName() + " doors! (" + load.template.size() + ") in " + latencyMillis + "ms");
+        }
+        queueDepth = queue.size();
+        if (worked) {
+            stats.record(DoorStats.Op.LOAD_VIRTUAL_DOORS, start); // Main thread time spent this tick
+        }
+    }
+
+    private boolean start(PendingLoad load) {
+        if (BigDoorsDungeons.getDungeonInstance(load.world) == null) {
+            return false; // MythicDungeons hasn't registered the instance yet
+        }
+        load.instance = BigDoorsDungeons.resolveDungeonInstance(load.world);
+        if (load.instance == null) {
+            return false;
+        }
+        load.template = storage.getDungeonTemplate(load.instance.getDungeon().getWorldName());
+        load.firstDoorUID = storage.reserveVirtualDoors(load.world, load.template.size());
+        return true;
+    }
+
+    private static final class PendingLoad {
+
+        private final World world;
+        private final long enqueuedAt;
+        private final long enqueuedTick;
+        private long nextProbeTick;
+        private int probeIntervalTicks = 1;
+        private boolean warned;
+
+        private Instance instance;
+        private DungeonTemplate template;
+        private long firstDoorUID;
+
+        private PendingLoad(World world, long enqueuedAt, long enqueuedTick) {
+            this.world = world;
+            this.enqueuedAt = enqueuedAt;
+            this.enqueuedTick = enqueuedTick;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package it.novaverse.bigdoorsdungeons;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// Call counters and latency histograms of the plugin hot paths.
+// Recording only touches striped adders, no locks and no allocation, so it stays on in production.
+public class DoorStats {
+
+    public enum Op {
+        GET_PERMISSION(true),
+        GET_DOOR(true),
+        GET_DOORS(true),
+        GET_DOORS_BY_NAME(true),
+        GET_DOORS_PAGE(true),
+        GET_DOORS_IN_WORLD(true),
+        GET_OWNER(true),
+        GET_POWER_BLOCK_DATA(true),
+        IS_POWER_BLOCK_LOCATION_EMPTY(true),
+        REMOVE_DOOR(true),
+        REMOVE_DOORS_FROM_WORLD(true),
+        UPDATE_DOOR(true),
+        INSERT(true),
+        GET_DUNGEON_INSTANCE(false),
+        LOAD_VIRTUAL_DOORS(false),
+        SAVE_VIRTUAL_DOORS(false),
+        FLUSH_DOOR_UPDATES(false),
+        PLACEHOLDER(false);
+
+        // Split by virtual doors and calls delegated to the SQLite storage
+        private final boolean split;
+
+        Op(boolean split) {
+            this.split = split;
+        }
+
+        public boolean isSplit() {
+            return split;
+        }
+
+        public String key() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    public enum Source {
+        VIRTUAL,
+        SQLITE;
+
+        public String key() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private final Timer[] timers;
+
+    public DoorStats() {
+        timers = new Timer[Op.values().length * 2];
+        for (var i = 0; i < timers.length; i++) {
+            timers[i] = new Timer();
+        }
+    }
+
+    public void record(Op op, long startNanos) {
+        record(op, Source.VIRTUAL, startNanos);
+    }
+
+    public void record(Op op, boolean virtual, long startNanos) {
+        record(op, virtual ? Source.VIRTUAL : Source.SQLITE, startNanos);
+    }
+
+    private void record(Op op, Source source, long startNanos) {
+        timers[op.ordinal() * 2 + source.ordinal()].record(System.nanoTime() - startNanos);
+    }
+
+    public Timer get(Op op, Source source) {
+        return timers[op.ordinal() * 2 + source.ordinal()];
+    }
+
+    public void reset() {
+        for (var timer : timers) {
+            timer.reset();
+        }
+    }
+
+    // Power of two buckets, from under 1µs up to 16ms and over
+    public static final class Timer {
+
+        private static final int BUCKETS = 16;
+        private static final int FIRST_BUCKET_SHIFT = 10; // 1024ns
+
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        private final LongAdder[] histogram = new LongAdder[BUCKETS];
+
+        private Timer() {
+            for (var i = 0; i < BUCKETS; i++) {
+                histogram[i] = new LongAdder();
+            }
+        }
+
+        private void record(long nanos) {
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+            var bucket = 64 - Long.numberOfLeadingZeros(nanos >>> FIRST_BUCKET_SHIFT);
+            histogram[Math.min(bucket, BUCKETS - 1)].increment();
+        }
+
+        private void reset() {
+            count.reset();
+            totalNanos.reset();
+            maxNanos.reset();
+            for (var bucket : histogram) {
+                bucket.reset();
+            }
+        }
+
+        public long count() {
+            return count.sum();
+        }
+
+        public long totalNanos() {
+            return totalNanos.sum();
+        }
+
+        public long averageNanos() {
+            var count = count();
+            return count == 0 ? 0 : totalNanos() / count;
+        }
+
+        public long maxNanos() {
+            return maxNanos.get();
+        }
+
+        // Upper bound of the bucket holding the given percentile, the histogram can't be more precise
+        public long percentileNanos(double percentile) {
+            var counts = new long[BUCKETS];
+            var total = 0L;
+            for (var i = 0; i < BUCKETS; i++) {
+                counts[i] = histogram[i].sum();
+                total += counts[i];
+            }
+            if (total == 0) {
+                return 0;
+            }
+            var target = (long) Math.ceil(total * percentile / 100);
+            var seen = 0L;
+            for (var i = 0; i < BUCKETS - 1; i++) {
+                seen += counts[i];
+                if (seen >= target) {
+                    return 1L << (FIRST_BUCKET_SHIFT + i);
+                }
+            }
+            return maxNanos();
+        }
+    }
+
+    public static String formatNanos(long nanos) {
+        if (nanos < TimeUnit.MILLISECONDS.toNanos(1)) {
+            return String.format(Locale.ROOT, "%.1fµs", nanos / 1_000D);
+        }
+        return String.format(Locale.ROOT, "%.2fms", nanos / 1_000_000D);
+    }
+}
@@ -0,0 +1,133 @@
+package it.novaverse.bigdoorsdungeons;
+
+import nl.pim16aap2.bigDoors.Door;
+import nl.pim16aap2.bigDoors.util.DoorDirection;
+import nl.pim16aap2.bigDoors.util.DoorType;
+import nl.pim16aap2.bigDoors.util.RotateDirection;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.util.Vector;
+
+import java.util.Objects;
+
+public record DoorTemplate(
+        String name,
+        Vector min,
+        Vector max,
+        Vector engine,
+        Vector powerBlock,
+        boolean open,
+        boolean locked,
+        DoorType type,
+        DoorDirection engSide,
+        RotateDirection openDir,
+        int autoClose,
+        boolean notificationEnabled,
+        boolean bypassProtections,
+        int blocksToMove
+) {
+
+    public DoorTemplate {
+        // Vectors are mutable, keep our own copies so templates can be shared between instances
+        min = min.clone();
+        max = max.clone();
+        engine = engine.clone();
+        powerBlock = powerBlock.clone();
+    }
+
+    // Handed out as copies too, a caller writing to one would move the door in every instance
+    @Override
+    public Vector min() {
+        return min.clone();
+    }
+
+    @Override
+    public Vector max() {
+        return max.clone();
+    }
+
+    @Override
+    public Vector engine() {
+        return engine.clone();
+    }
+
+    @Override
+    public Vector powerBlock() {
+        return powerBlock.clone();
+    }
+
+    public Location engineLocation(World world) {
+        return new Location(world, engine.getX(), engine.getY(), engine.getZ());
+    }
+
+    public DoorTemplate withCoords(boolean open, Vector min, Vector max, DoorDirection engSide) {
+        return new DoorTemplate(name, min, max, engine, powerBlock, open, locked, type, engSide, openDir, autoClose, notificationEnabled, bypassProtections, blocksToMove);
+    }
+
+    public DoorTemplate withPowerBlock(Vector powerBlock) {
+        return new DoorTemplate(name, min, max, engine, powerBlock, open, locked, type, engSide, openDir, autoClose, notificationEnabled, bypassProtections, blocksToMove);
+    }
+
+    public DoorTemplate withLocked(boolean locked) {
+        return new DoorTemplate(name, min, max, engine, powerBlock, open, locked, type, engSide, openDir, autoClose, notificationEnabled, bypassProtections, blocksToMove);
+    }
+
+    public DoorTemplate withOpenDir(RotateDirection openDir) {
+        return new DoorTemplate(name, min, max, engine, powerBlock, open, locked, type, engSide, openDir, autoClose, notificationEnabled, bypassProtections, blocksToMove);
+    }
+
+    public DoorTemplate withAutoClose(int autoClose) {
+        return new DoorTemplate(name, min, max, engine, powerBlock, open, locked, type, engSide, openDir, autoClose, notificationEnabled, bypassProtections, blocksToMove);
+    }
+
+    public DoorTemplate withNotificationEnabled(boolean notificationEnabled) {
+        return new DoorTemplate(name, min, max, engine, powerBlock, open, locked, type, engSide, openDir, autoClose, notificationEnabled, bypassProtections, blocksToMove);
+    }
+
+    public DoorTemplate withBypassProtections(boolean bypassProtections) {
+        return new DoorTemplate(name, min, max, engine, powerBlock, open, locked, type, engSide, openDir, autoClose, notificationEnabled, bypassProtections, blocksToMove);
+    }
+
+    public DoorTemplate withBlocksToMove(int blocksToMove) {
+        return new DoorTemplate(name, min, max, engine, powerBlock, open, locked, type, engSide, openDir, autoClose, notificationEnabled, bypassProtections, blocksToMove);
+    }
+
+    public static DoorTemplate of(Door door) {
+        return new DoorTemplate(
+                door.getName(),
+                door.getMinimum().toVector(),
+                door.getMaximum().toVector(),
+                door.getEngine().toVector(),
+                door.getPowerBlockLoc().toVector(),
+                door.isOpen(),
+                door.isLocked(),
+                door.getType(),
+                door.getEngSide(),
+                door.getOpenDir(),
+                door.getAutoClose(),
+                door.notificationEnabled(),
+                door.bypassProtections(),
+                door.getBlocksToMove()
+        );
+    }
+
+    public static DoorTemplate load(String name, ConfigurationSection section) {
+        return new DoorTemplate(
+                name,
+                Objects.requireNonNull(section.getVector("min")),
+                Objects.requireNonNull(section.getVector("max")),
+                Objects.requireNonNull(section.getVector("engine")),
+                Objects.requireNonNull(section.getVector("powerBlock")),
+                section.getBoolean("open"),
+                section.getBoolean("locked"),
+                DoorType.valueOf(section.getString("type")),
+                DoorDirection.valueOf(section.getString("engSide")),
+                RotateDirection.valueOf(section.getString("openDir")),
+                section.getInt("autoClose"),
+                section.getBoolean("notificationEnabled", section.getBoolean("notify")), // Older saves used "notify"
+                section.getBoolean("bypassProtections"),
+                section.getInt("blocksToMove")
+        );
+    }
+}
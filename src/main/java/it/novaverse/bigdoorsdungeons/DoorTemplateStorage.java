@@ -0,0 +1,266 @@
+package it.novaverse.bigdoorsdungeons;
+
+import nl.pim16aap2.bigDoors.util.DoorDirection;
+import nl.pim16aap2.bigDoors.util.DoorType;
+import nl.pim16aap2.bigDoors.util.RotateDirection;
+import org.bukkit.util.Vector;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+public class DoorTemplateStorage {
+
+    private static final int MAGIC = 0x42444454; // "BDDT"
+    private static final short VERSION = 1;
+    private static final String EXTENSION = ".bdd";
+    private static final String JOURNAL_EXTENSION = ".journal";
+
+    private static final int FLAG_OPEN = 1;
+    private static final int FLAG_LOCKED = 1 << 1;
+    private static final int FLAG_NOTIFICATION = 1 << 2;
+    private static final int FLAG_BYPASS_PROTECTIONS = 1 << 3;
+
+    private final Path directory;
+    // Checksum of the content last read or written per dungeon, tells changes made by others apart from our own saves
+    private final Map<String, Long> checksums;
+
+    public DoorTemplateStorage(Path directory) {
+        this.directory = directory;
+        checksums = new ConcurrentHashMap<>();
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    // Dungeon of a door file name, null for any other file of the directory
+    @Nullable
+    public static String getDungeonName(Path file) {
+        var fileName = file.getFileName().toString();
+        return fileName.endsWith(EXTENSION) ? fileName.substring(0, fileName.length() - EXTENSION.length()) : null;
+    }
+
+    public DungeonTemplate load(String dungeonName) throws IOException {
+        var template = load(dungeonName, false);
+        return template == null ? DungeonTemplate.empty(dungeonName) : template;
+    }
+
+    // Null when the file holds exactly what was last read or written
+    @Nullable
+    public DungeonTemplate loadIfChanged(String dungeonName) throws IOException {
+        return load(dungeonName, true);
+    }
+
+    @Nullable
+    private DungeonTemplate load(String dungeonName, boolean onlyIfChanged) throws IOException {
+        var file = directory.resolve(dungeonName + EXTENSION);
+        if (!Files.isRegularFile(file)) {
+            checksums.remove(dungeonName);
+            return DungeonTemplate.empty(dungeonName);
+        }
+        var buffer = read(file);
+        var checksum = checksum(buffer);
+        var previous = checksums.get(dungeonName);
+        if (onlyIfChanged && previous != null && previous == checksum) {
+            return null;
+        }
+        DungeonTemplate template;
+        try {
+            template = decode(dungeonName, buffer);
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupted door file " + file.getFileName(), e);
+        }
+        checksums.put(dungeonName, checksum);
+        return template;
+    }
+
+    public void save(DungeonTemplate template) throws IOException {
+        Files.createDirectories(directory);
+        var file = directory.resolve(template.name() + EXTENSION);
+        var tempFile = directory.resolve(template.name() + EXTENSION + ".tmp");
+
+        var buffer = ByteBuffer.wrap(encode(template));
+        checksums.put(template.name(), checksum(buffer));
+        try (var channel = FileChannel.open(tempFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        try {
+            Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    public boolean exists(String dungeonName) {
+        return Files.isRegularFile(directory.resolve(dungeonName + EXTENSION));
+    }
+
+    // The door file and whatever a failed save left of it
+    public void delete(String dungeonName) throws IOException {
+        checksums.remove(dungeonName);
+        Files.deleteIfExists(directory.resolve(dungeonName + EXTENSION));
+        Files.deleteIfExists(directory.resolve(dungeonName + EXTENSION + ".tmp"));
+    }
+
+    // Edit-mode journals
+
+    public List<String> getJournaledDungeons() throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (var files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString())
+                    .filter(fileName -> fileName.endsWith(JOURNAL_EXTENSION))
+                    .map(fileName -> fileName.substring(0, fileName.length() - JOURNAL_EXTENSION.length()))
+                    .toList();
+        }
+    }
+
+    public ByteBuffer readJournal(String dungeonName) throws IOException {
+        var file = directory.resolve(dungeonName + JOURNAL_EXTENSION);
+        if (!Files.isRegularFile(file)) {
+            return ByteBuffer.allocate(0);
+        }
+        return read(file);
+    }
+
+    public void appendJournal(String dungeonName, ByteBuffer records) throws IOException {
+        Files.createDirectories(directory);
+        var file = directory.resolve(dungeonName + JOURNAL_EXTENSION);
+        try (var channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            while (records.hasRemaining()) {
+                channel.write(records);
+            }
+        }
+    }
+
+    public void deleteJournal(String dungeonName) throws IOException {
+        Files.deleteIfExists(directory.resolve(dungeonName + JOURNAL_EXTENSION));
+    }
+
+    private static ByteBuffer read(Path file) throws IOException {
+        ByteBuffer buffer;
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // Keep reading until the whole file is buffered
+            }
+        }
+        return buffer.flip();
+    }
+
+    private static long checksum(ByteBuffer buffer) {
+        var crc = new CRC32();
+        crc.update(buffer.duplicate());
+        return crc.getValue();
+    }
+
+    private static byte[] encode(DungeonTemplate template) throws IOException {
+        var bytes = new ByteArrayOutputStream(64 + template.size() * 96);
+        var out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeInt(template.size());
+        for (var door : template.doors()) {
+            writeDoor(out, door);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static DungeonTemplate decode(String dungeonName, ByteBuffer buffer) throws IOException {
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException("Not a door file");
+        }
+        var version = buffer.getShort();
+        if (version != VERSION) {
+            throw new IOException("Unsupported door file version " + version);
+        }
+        var count = buffer.getInt();
+        var doors = new ArrayList<DoorTemplate>(count);
+        for (var i = 0; i < count; i++) {
+            doors.add(readDoor(buffer));
+        }
+        return new DungeonTemplate(dungeonName, doors);
+    }
+
+    static void writeDoor(DataOutputStream out, DoorTemplate door) throws IOException {
+        writeString(out, door.name());
+        writeVector(out, door.min());
+        writeVector(out, door.max());
+        writeVector(out, door.engine());
+        writeVector(out, door.powerBlock());
+        var flags = 0;
+        if (door.open()) flags |= FLAG_OPEN;
+        if (door.locked()) flags |= FLAG_LOCKED;
+        if (door.notificationEnabled()) flags |= FLAG_NOTIFICATION;
+        if (door.bypassProtections()) flags |= FLAG_BYPASS_PROTECTIONS;
+        out.writeByte(flags);
+        // Enums are stored by name, their ordinals aren't stable across BigDoors releases
+        writeString(out, door.type().name());
+        writeString(out, door.engSide().name());
+        writeString(out, door.openDir().name());
+        out.writeInt(door.autoClose());
+        out.writeInt(door.blocksToMove());
+    }
+
+    static DoorTemplate readDoor(ByteBuffer buffer) {
+        var name = readString(buffer);
+        var min = readVector(buffer);
+        var max = readVector(buffer);
+        var engine = readVector(buffer);
+        var powerBlock = readVector(buffer);
+        var flags = buffer.get();
+        return new DoorTemplate(
+                name,
+                min,
+                max,
+                engine,
+                powerBlock,
+                (flags & FLAG_OPEN) != 0,
+                (flags & FLAG_LOCKED) != 0,
+                DoorType.valueOf(readString(buffer)),
+                DoorDirection.valueOf(readString(buffer)),
+                RotateDirection.valueOf(readString(buffer)),
+                buffer.getInt(),
+                (flags & FLAG_NOTIFICATION) != 0,
+                (flags & FLAG_BYPASS_PROTECTIONS) != 0,
+                buffer.getInt()
+        );
+    }
+
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        var bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(ByteBuffer buffer) {
+        var bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static void writeVector(DataOutputStream out, Vector vector) throws IOException {
+        out.writeInt(vector.getBlockX());
+        out.writeInt(vector.getBlockY());
+        out.writeInt(vector.getBlockZ());
+    }
+
+    static Vector readVector(ByteBuffer buffer) {
+        return new Vector(buffer.getInt(), buffer.getInt(), buffer.getInt());
+    }
+}
@@ -0,0 +1,99 @@
+package it.novaverse.bigdoorsdungeons;
+
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// Picks up door files changed by hand, e.g. copied over from a staging server, without a restart.
+// Runs on its own thread: files are parsed there and only the template of the dungeon that changed is swapped,
+// instances already loaded keep the doors they were built from. Our own saves are recognized and skipped.
+public class DoorTemplateWatcher implements Runnable {
+
+    // Copies show up as several events, wait for the directory to settle before reading
+    private static final long SETTLE_MILLIS = 500;
+
+    private final DoorTemplateStorage templateStorage;
+    private final HookedDoorStorage storage;
+    private final Logger logger;
+    private final WatchService watchService;
+    private final Thread thread;
+
+    public DoorTemplateWatcher(DoorTemplateStorage templateStorage, HookedDoorStorage storage, Logger logger) throws IOException {
+        this.templateStorage = templateStorage;
+        this.storage = storage;
+        this.logger = logger;
+        var directory = templateStorage.getDirectory();
+        Files.createDirectories(directory);
+        watchService = directory.getFileSystem().newWatchService();
+        directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        thread = new Thread(this, "BigDoorsDungeons-Watcher");
+        thread.setDaemon(true);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    public void close() {
+        try {
+            watchService.close(); // Wakes the thread up
+        } catch (IOException e) {
+            logger.error("Unable to stop watching door files", e);
+        }
+    }
+
+    @Override
+    public void run() {
+        var changed = new HashSet<String>();
+        try {
+            while (true) {
+                // Block until something changes, then keep collecting until nothing did for a while
+                var key = changed.isEmpty() ? watchService.take() : watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+                if (key == null) {
+                    reload(changed);
+                    changed.clear();
+                    continue;
+                }
+                for (var event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        continue;
+                    }
+                    var dungeonName = DoorTemplateStorage.getDungeonName((Path) event.context());
+                    if (dungeonName != null) {
+                        changed.add(dungeonName);
+                    }
+                }
+                if (!key.reset()) {
+                    logger.warn("Door files directory is gone, stopped watching it");
+                    return;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Plugin disabled
+        }
+    }
+
+    private void reload(Set<String> dungeonNames) {
+        for (var dungeonName : dungeonNames) {
+            try {
+                var template = templateStorage.loadIfChanged(dungeonName);
+                if (template == null) {
+                    continue; // One of our saves
+                }
+                storage.replaceDungeonTemplate(template);
+                logger.info("Reloaded doors of dungeon " + dungeonName + " (" + template.size() + "), new instances will use them");
+            } catch (IOException e) {
+                // Likely still being copied, the next change retries
+                logger.warn("Unable to reload doors of dungeon " + dungeonName + ", keeping the loaded ones", e);
+            }
+        }
+    }
+}
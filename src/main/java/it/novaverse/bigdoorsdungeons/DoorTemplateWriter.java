@@ -0,0 +1,94 @@
+package it.novaverse.bigdoorsdungeons;
+
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class DoorTemplateWriter {
+
+    private static final long COALESCE_DELAY_MILLIS = 1000;
+
+    private final DoorTemplateStorage storage;
+    private final Logger logger;
+    private final ScheduledExecutorService executor;
+
+    // Latest template per dungeon waiting to be written, newer saves replace older ones
+    private final Map<String, PendingSave> pending;
+    private final AtomicBoolean writeScheduled;
+    // Journal records appended per dungeon, tells whether a saved template covers the whole journal
+    private final Map<String, AtomicLong> journalSequences;
+
+    public DoorTemplateWriter(DoorTemplateStorage storage, Logger logger) {
+        this.storage = storage;
+        this.logger = logger;
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> new Thread(runnable, "BigDoorsDungeons-Writer"));
+        pending = new ConcurrentHashMap<>();
+        writeScheduled = new AtomicBoolean();
+        journalSequences = new ConcurrentHashMap<>();
+    }
+
+    public void append(String dungeonName, ByteBuffer record) {
+        journalSequences.computeIfAbsent(dungeonName, name -> new AtomicLong()).incrementAndGet();
+        Runnable task = () -> {
+            try {
+                storage.appendJournal(dungeonName, record);
+            } catch (IOException e) {
+                logger.error("Unable to journal door change of dungeon " + dungeonName, e);
+            }
+        };
+        if (executor.isShutdown()) {
+            task.run();
+            return;
+        }
+        executor.execute(task);
+    }
+
+    public void save(DungeonTemplate template) {
+        var journalSequence = journalSequences.get(template.name());
+        pending.put(template.name(), new PendingSave(template, journalSequence == null ? 0 : journalSequence.get()));
+        if (writeScheduled.compareAndSet(false, true)) {
+            executor.schedule(this::write, COALESCE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+                logger.warn("Timed out waiting for pending door saves, writing them on the current thread");
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        write();
+    }
+
+    private synchronized void write() {
+        writeScheduled.set(false);
+        for (var name : pending.keySet()) {
+            var save = pending.remove(name);
+            if (save == null) {
+                continue;
+            }
+            try {
+                storage.save(save.template());
+                // Compact the journal, unless changes were journaled after the template was taken
+                var journalSequence = journalSequences.get(name);
+                if (journalSequence == null || journalSequence.get() == save.journalSequence()) {
+                    storage.deleteJournal(name);
+                }
+            } catch (IOException e) {
+                logger.error("Unable to save doors of dungeon " + name, e);
+            }
+        }
+    }
+
+    private record PendingSave(DungeonTemplate template, long journalSequence) {
+    }
+}
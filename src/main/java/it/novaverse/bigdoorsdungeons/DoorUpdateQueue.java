@@ -0,0 +1,183 @@
+package it.novaverse.bigdoorsdungeons;
+
+import nl.pim16aap2.bigDoors.Door;
+import nl.pim16aap2.bigDoors.util.DoorDirection;
+import nl.pim16aap2.bigDoors.util.RotateDirection;
+import org.bukkit.Location;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Write-behind queue of real door updates. Updates to the same door merge field by field, last write wins,
+// and are written to SQLite by a periodic flush off the main thread, all of them in one transaction.
+// Reads never flush: they apply what's still queued on top of what they read. A door is only dropped from the queue
+// once its write is committed, and the flush sequence tells a read whether a flush ended while it was reading.
+public class DoorUpdateQueue implements Runnable {
+
+    private final Map<Long, PendingUpdate> pending;
+    private final Writer writer;
+    private final DoorStats stats;
+    private final Logger logger;
+    // Only serializes flushes, the periodic one and the one on shutdown
+    private final Object flushLock = new Object();
+    // Bumped when a flush starts and when it ends
+    private final AtomicLong flushSequence = new AtomicLong();
+
+    public DoorUpdateQueue(Writer writer, DoorStats stats, Logger logger) {
+        this.writer = writer;
+        this.stats = stats;
+        this.logger = logger;
+        pending = new ConcurrentHashMap<>();
+    }
+
+    public void enqueue(long doorUID, PendingUpdate update) {
+        pending.merge(doorUID, update, PendingUpdate::merge);
+    }
+
+    @Nullable
+    public PendingUpdate get(long doorUID) {
+        return pending.get(doorUID);
+    }
+
+    public boolean isEmpty() {
+        return pending.isEmpty();
+    }
+
+    public int size() {
+        return pending.size();
+    }
+
+    public long getFlushSequence() {
+        return flushSequence.get();
+    }
+
+    // Pending updates of a door that's being removed, there's nothing left to update.
+    // A flush writing it at the same time updates a row that's about to go, or already gone
+    public void discard(long doorUID) {
+        pending.remove(doorUID);
+    }
+
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        var start = System.nanoTime();
+        synchronized (flushLock) {
+            flushSequence.incrementAndGet();
+            try {
+                var batch = new HashMap<>(pending);
+                try {
+                    writer.write(batch);
+                } catch (SQLException e) {
+                    logger.error("Unable to write " + batch.size() + " queued door updates, retrying on the next flush", e);
+                    return;
+                }
+                // Merged with a newer update while writing, that one still has to be written
+                batch.forEach(pending::remove);
+            } finally {
+                flushSequence.incrementAndGet();
+            }
+        }
+        stats.record(DoorStats.Op.FLUSH_DOOR_UPDATES, start);
+    }
+
+    // Periodic flush
+    @Override
+    public void run() {
+        flush();
+    }
+
+    // Writes every update in a single transaction, invalidating what was cached of the doors once it's committed
+    @FunctionalInterface
+    public interface Writer {
+        void write(Map<Long, PendingUpdate> updates) throws SQLException;
+    }
+
+    public record Coords(boolean open, int xMin, int yMin, int zMin, int xMax, int yMax, int zMax, DoorDirection engSide) {
+    }
+
+    // Fields left null aren't updated. Power block moves aren't queued, every redstone lookup depends on them
+    public record PendingUpdate(
+            @Nullable Integer blocksToMove,
+            @Nullable Coords coords,
+            @Nullable Integer autoClose,
+            @Nullable Boolean notificationEnabled,
+            @Nullable Boolean bypassProtections,
+            @Nullable RotateDirection openDir,
+            @Nullable Boolean locked
+    ) {
+
+        public static PendingUpdate blocksToMove(int blocksToMove) {
+            return new PendingUpdate(blocksToMove, null, null, null, null, null, null);
+        }
+
+        public static PendingUpdate coords(Coords coords) {
+            return new PendingUpdate(null, coords, null, null, null, null, null);
+        }
+
+        public static PendingUpdate autoClose(int autoClose) {
+            return new PendingUpdate(null, null, autoClose, null, null, null, null);
+        }
+
+        public static PendingUpdate notificationEnabled(boolean notificationEnabled) {
+            return new PendingUpdate(null, null, null, notificationEnabled, null, null, null);
+        }
+
+        public static PendingUpdate bypassProtections(boolean bypassProtections) {
+            return new PendingUpdate(null, null, null, null, bypassProtections, null, null);
+        }
+
+        public static PendingUpdate openDir(RotateDirection openDir) {
+            return new PendingUpdate(null, null, null, null, null, openDir, null);
+        }
+
+        public static PendingUpdate locked(boolean locked) {
+            return new PendingUpdate(null, null, null, null, null, null, locked);
+        }
+
+        // The door as it will be once the update is written, the given one is left as is
+        public Door applyTo(Door door) {
+            var world = door.getWorld();
+            var updated = new Door(
+                    door.getPlayerUUID(),
+                    door.getPlayerName(),
+                    door.getPrimeOwner(),
+                    world,
+                    coords != null ? new Location(world, coords.xMin, coords.yMin, coords.zMin) : door.getMinimum(),
+                    coords != null ? new Location(world, coords.xMax, coords.yMax, coords.zMax) : door.getMaximum(),
+                    door.getEngine(),
+                    door.getName(),
+                    coords != null ? coords.open : door.isOpen(),
+                    door.getDoorUID(),
+                    locked != null ? locked : door.isLocked(),
+                    door.getPermission(),
+                    door.getType(),
+                    coords != null ? coords.engSide : door.getEngSide(),
+                    door.getPowerBlockLoc(),
+                    openDir != null ? openDir : door.getOpenDir(),
+                    autoClose != null ? autoClose : door.getAutoClose(),
+                    notificationEnabled != null ? notificationEnabled : door.notificationEnabled(),
+                    bypassProtections != null ? bypassProtections : door.bypassProtections()
+            );
+            updated.setBlocksToMove(blocksToMove != null ? blocksToMove : door.getBlocksToMove());
+            return updated;
+        }
+
+        private static PendingUpdate merge(PendingUpdate older, PendingUpdate newer) {
+            return new PendingUpdate(
+                    newer.blocksToMove != null ? newer.blocksToMove : older.blocksToMove,
+                    newer.coords != null ? newer.coords : older.coords,
+                    newer.autoClose != null ? newer.autoClose : older.autoClose,
+                    newer.notificationEnabled != null ? newer.notificationEnabled : older.notificationEnabled,
+                    newer.bypassProtections != null ? newer.bypassProtections : older.bypassProtections,
+                    newer.openDir != null ? newer.openDir : older.openDir,
+                    newer.locked != null ? newer.locked : older.locked
+            );
+        }
+    }
+}
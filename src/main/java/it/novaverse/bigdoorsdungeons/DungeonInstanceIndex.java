@@ -0,0 +1,102 @@
+package it.novaverse.bigdoorsdungeons;
+
+import org.bukkit.World;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+// Dungeon instances by world. The plugin indexes MythicDungeons instances, the scan finds the instance of a world
+// in its registry and the other function tells which world an instance is in now
+public class DungeonInstanceIndex<I> {
+
+    private final Function<World, I> scan;
+    private final Function<I, World> instanceWorld;
+
+    private final Map<UUID, I> instancesByWorld;
+    // Worlds known not to host a dungeon instance, so misses don't rescan every dungeon
+    private final Set<UUID> plainWorlds;
+    // Worlds that were just loaded, MythicDungeons may not have registered their instance yet. Looked up on every get
+    private final Set<UUID> pendingWorlds;
+
+    public DungeonInstanceIndex(Function<World, I> scan, Function<I, World> instanceWorld) {
+        this.scan = scan;
+        this.instanceWorld = instanceWorld;
+        instancesByWorld = new ConcurrentHashMap<>();
+        plainWorlds = ConcurrentHashMap.newKeySet();
+        pendingWorlds = ConcurrentHashMap.newKeySet();
+    }
+
+    @Nullable
+    public I get(World world) {
+        var worldUID = world.getUID();
+        var instance = instancesByWorld.get(worldUID);
+        if (instance != null) {
+            if (world.equals(instanceWorld.apply(instance))) {
+                return instance;
+            }
+            instancesByWorld.remove(worldUID, instance); // Stale entry, the instance moved on
+        } else if (plainWorlds.contains(worldUID)) {
+            return null;
+        }
+
+        instance = scan.apply(world);
+        if (instance != null) {
+            instancesByWorld.put(worldUID, instance);
+        } else if (!pendingWorlds.contains(worldUID)) {
+            plainWorlds.add(worldUID);
+        }
+        return instance;
+    }
+
+    public void markLoading(World world) {
+        var worldUID = world.getUID();
+        pendingWorlds.add(worldUID);
+        plainWorlds.remove(worldUID);
+        instancesByWorld.remove(worldUID);
+    }
+
+    // Stays pending until its instance is found, a miss is never cached for a world that's still loading
+    @Nullable
+    public I resolve(World world) {
+        var instance = get(world);
+        if (instance != null) {
+            pendingWorlds.remove(world.getUID());
+        }
+        return instance;
+    }
+
+    public void remove(World world) {
+        var worldUID = world.getUID();
+        instancesByWorld.remove(worldUID);
+        plainWorlds.remove(worldUID);
+        pendingWorlds.remove(worldUID);
+    }
+
+    public void clear() {
+        instancesByWorld.clear();
+        plainWorlds.clear();
+        pendingWorlds.clear();
+    }
+
+    // Entries left behind by worlds that are gone
+    public List<String> verify(Predicate<UUID> isWorldLoaded) {
+        var problems = new ArrayList<String>();
+        instancesByWorld.keySet().stream()
+                .filter(isWorldLoaded.negate())
+                .forEach(worldUID -> problems.add("Instance still indexed for unloaded world " + worldUID));
+        plainWorlds.stream()
+                .filter(isWorldLoaded.negate())
+                .forEach(worldUID -> problems.add("Unloaded world " + worldUID + " still cached as a plain world"));
+        pendingWorlds.stream()
+                .filter(isWorldLoaded.negate())
+                .forEach(worldUID -> problems.add("Unloaded world " + worldUID + " still pending"));
+        return problems;
+    }
+
+    public int size() {
+        return instancesByWorld.size();
+    }
+}
@@ -0,0 +1,40 @@
+package it.novaverse.bigdoorsdungeons;
+
+import nl.pim16aap2.bigDoors.Door;
+import org.bukkit.configuration.ConfigurationSection;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+
+public record DungeonTemplate(String name, List<DoorTemplate> doors) {
+
+    public DungeonTemplate {
+        doors = List.copyOf(doors);
+    }
+
+    public static DungeonTemplate empty(String name) {
+        return new DungeonTemplate(name, List.of());
+    }
+
+    public static DungeonTemplate of(String name, Collection<Door> doors) {
+        return new DungeonTemplate(name, doors.stream().map(DoorTemplate::of).toList());
+    }
+
+    public static DungeonTemplate load(String name, @Nullable ConfigurationSection section) {
+        if (section == null) {
+            return empty(name);
+        }
+        var doors = new ArrayList<DoorTemplate>();
+        for (var doorName : section.getKeys(false)) {
+            doors.add(DoorTemplate.load(doorName, Objects.requireNonNull(section.getConfigurationSection(doorName))));
+        }
+        return new DungeonTemplate(name, doors);
+    }
+
+    public int size() {
+        return doors.size();
+    }
+}
@@ -1,228 +1,457 @@
 package it.novaverse.bigdoorsdungeons;
 
-import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.novaverse.bigdoorsdungeons.DoorStats.Op;
+import it.novaverse.bigdoorsdungeons.DoorUpdateQueue.Coords;
+import it.novaverse.bigdoorsdungeons.DoorUpdateQueue.PendingUpdate;
+import it.unimi.dsi.fastutil.longs.LongSet;
 import nl.pim16aap2.bigDoors.BigDoors;
 import nl.pim16aap2.bigDoors.Door;
 import nl.pim16aap2.bigDoors.storage.sqlite.SQLiteJDBCDriverConnection;
 import nl.pim16aap2.bigDoors.util.DoorDirection;
 import nl.pim16aap2.bigDoors.util.DoorOwner;
-import nl.pim16aap2.bigDoors.util.DoorType;
 import nl.pim16aap2.bigDoors.util.RotateDirection;
-import org.apache.commons.lang3.reflect.FieldUtils;
-import org.bukkit.Bukkit;
+import nl.pim16aap2.bigDoors.util.Util;
+import org.bukkit.Chunk;
 import org.bukkit.Location;
 import org.bukkit.World;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
 import java.util.*;
-import java.util.concurrent.atomic.AtomicLong;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.LongPredicate;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
 
 public class HookedDoorStorage extends SQLiteJDBCDriverConnection {
 
-    private final static UUID VIRTUAL_DOOR_OWNER_UUID = UUID.fromString("a8190a78-cf83-11ee-a506-0242ac120002");
-    private final static String VIRTUAL_DOOR_OWNER_NAME = "BigDoorsDungeons";
+    // Every queued door is a row of this one batched statement, columns of fields left null keep their value
+    private static final String UPDATE_DOOR_SQL = "UPDATE doors SET "
+            + "blocksToMove = COALESCE(?, blocksToMove), "
+            + "isOpen = COALESCE(?, isOpen), "
+            + "xMin = COALESCE(?, xMin), yMin = COALESCE(?, yMin), zMin = COALESCE(?, zMin), "
+            + "xMax = COALESCE(?, xMax), yMax = COALESCE(?, yMax), zMax = COALESCE(?, zMax), "
+            + "engineSide = COALESCE(?, engineSide), "
+            + "autoClose = COALESCE(?, autoClose), "
+            + "notify = COALESCE(?, notify), "
+            + "bypass_protections = COALESCE(?, bypass_protections), "
+            + "openDirection = COALESCE(?, openDirection), "
+            + "isLocked = COALESCE(?, isLocked) "
+            + "WHERE id = ?";
 
     private final BigDoorsDungeons plugin;
+    private final DoorTemplateStorage templateStorage;
+    private final DoorTemplateWriter templateWriter;
+    private final DoorStats stats;
+    // Same database as the storage, queued updates are written through a connection of their own
+    private final String databaseURL;
+    private final PermissionCache permissions;
+    @Nullable
+    private final RealDoorCache realDoors;
+    @Nullable
+    private final DoorUpdateQueue updates;
 
-    private final Map<Long, Door> virtualDoors;
+    private final VirtualDoorIndex virtualDoors;
 
-    private final Map<String, Door> virtualDoorsByName;
-    private final AtomicLong lastVirtualDoorId;
+    private final Map<String, DungeonTemplate> dungeonTemplates;
 
-    public HookedDoorStorage(BigDoorsDungeons plugin, BigDoors bigDoors, String dbName) {
+    public HookedDoorStorage(BigDoorsDungeons plugin, BigDoors bigDoors, String dbName, DoorTemplateStorage templateStorage, DoorTemplateWriter templateWriter, DoorStats stats, PermissionCache permissions, @Nullable RealDoorCache realDoors, boolean writeBehind) {
         super(bigDoors, dbName);
         this.plugin = plugin;
-        virtualDoors = new Long2ObjectOpenHashMap<>();
-        virtualDoorsByName = new LinkedHashMap<>();
-        lastVirtualDoorId = new AtomicLong(-1);
+        this.templateStorage = templateStorage;
+        this.templateWriter = templateWriter;
+        this.stats = stats;
+        databaseURL = "jdbc:sqlite:" + new File(bigDoors.getDataFolder(), dbName);
+        this.permissions = permissions;
+        this.realDoors = realDoors;
+        updates = writeBehind ? new DoorUpdateQueue(this::writePendingUpdates, stats, plugin.getSLF4JLogger()) : null;
+        virtualDoors = new VirtualDoorIndex();
+        dungeonTemplates = new ConcurrentHashMap<>();
+    }
+
+    @Nullable
+    public Door getVirtualDoor(World world, String baseName) {
+        return virtualDoors.getByName(world.getUID(), baseName);
+    }
+
+    // Resolves the UID without building the door, 0 if there's none
+    public long getVirtualDoorUID(World world, String baseName) {
+        return virtualDoors.getUIDByName(world.getUID(), baseName);
+    }
+
+    // A page of virtual doors, optionally only those of a dungeon or of an instance world
+    public List<Door> getVirtualDoors(@Nullable String dungeonName, @Nullable World world, long skip, int limit) {
+        return virtualDoors.getPage(dungeonName, world == null ? null : world.getUID(), null, null, skip, limit);
+    }
+
+    public Collection<Door> getVirtualDoors() {
+        return virtualDoors.getAll();
+    }
+
+    public int getVirtualDoorCount(World world) {
+        return virtualDoors.size(world.getUID());
+    }
+
+    public int getVirtualDoorCount() {
+        return virtualDoors.size();
     }
 
-    public Door getVirtualDoorByName(String name) {
-        return virtualDoorsByName.get(name);
+    // Every virtual door of the world and its reserved UIDs, whether or not MythicDungeons still knows the instance
+    public List<Door> removeVirtualDoors(World world) {
+        var start = System.nanoTime();
+        var doors = virtualDoors.removeWorld(world.getUID());
+        stats.record(Op.REMOVE_DOORS_FROM_WORLD, true, start);
+        return doors;
+    }
+
+    public List<String> verifyVirtualDoors(Predicate<UUID> isWorldLoaded) {
+        return virtualDoors.verify(isWorldLoaded);
+    }
+
+    @Nullable
+    public RealDoorCache getRealDoorCache() {
+        return realDoors;
+    }
+
+    @Nullable
+    public DoorUpdateQueue getDoorUpdateQueue() {
+        return updates;
+    }
+
+    public long getVirtualDoorsVersion(World world) {
+        return virtualDoors.getVersion(world.getUID());
     }
 
     // Virtual door save/load methods
 
-    public int saveVirtualDoors(World sourceWorld, String saveName) {
-        var worldsSection = plugin.getConfig().getConfigurationSection("worlds");
-        if (worldsSection == null) {
-            worldsSection = plugin.getConfig().createSection("worlds");
+    public DungeonTemplate getDungeonTemplate(String saveName) {
+        var template = dungeonTemplates.get(saveName);
+        if (template == null) {
+            try {
+                template = templateStorage.load(saveName);
+            } catch (IOException e) {
+                plugin.getSLF4JLogger().error("Unable to load doors of dungeon " + saveName, e);
+                return DungeonTemplate.empty(saveName);
+            }
+            dungeonTemplates.put(saveName, template);
         }
-        worldsSection.set(saveName, null);
+        return template;
+    }
 
-        var worldSection = worldsSection.createSection(saveName);
+    // Used by instances loaded from now on, the ones already loaded keep the templates they were built from
+    public void replaceDungeonTemplate(DungeonTemplate template) {
+        dungeonTemplates.put(template.name(), template);
+    }
 
-        var doorsCount = 0;
-        for (var door : getDoorsInWorld(sourceWorld)) {
-            var doorSection = worldSection.createSection(door.getName());
-            doorSection.set("min", door.getMinimum().toVector());
-            doorSection.set("max", door.getMaximum().toVector());
-            doorSection.set("engine", door.getEngine().toVector());
-            doorSection.set("powerBlock", door.getPowerBlockLoc().toVector());
-            doorSection.set("open", door.isOpen());
-            doorSection.set("locked", door.isLocked());
-            doorSection.set("type", door.getType().name());
-            doorSection.set("engSide", door.getEngSide().name());
-            doorSection.set("openDir", door.getOpenDir().name());
-            doorSection.set("autoClose", door.getAutoClose());
-            doorSection.set("notificationEnabled", door.notificationEnabled());
-            doorSection.set("bypassProtections", door.bypassProtections());
-            doorSection.set("blocksToMove", door.getBlocksToMove());
-            doorsCount++;
-        }
+    public int saveVirtualDoors(World sourceWorld, String saveName) {
+        var start = System.nanoTime();
+        var template = DungeonTemplate.of(saveName, getDoorsInWorld(sourceWorld));
+        dungeonTemplates.put(saveName, template);
+        templateWriter.save(template); // Serialized and written off the main thread
+        stats.record(Op.SAVE_VIRTUAL_DOORS, start);
+
+        return template.size();
+    }
 
-        plugin.saveConfig();
+    // Virtual door loading, driven by the DoorLoader a few doors per tick
+
+    public long reserveVirtualDoors(World targetWorld, int count) {
+        // One contiguous block of UIDs for the whole instance, released at once when the world unloads
+        return virtualDoors.reserve(targetWorld.getUID(), count);
+    }
+
+    // Publishes the doors of an instance at once. They share the dungeon's templates, instances only add a name suffix
+    public void addVirtualDoors(World targetWorld, boolean editMode, long firstDoorUID, DungeonTemplate template) {
+        var nameSuffix = editMode ? "" : "_" + targetWorld.getName(); // we need suffix to make it unique
+        virtualDoors.addAll(targetWorld, template.name(), nameSuffix, firstDoorUID, template.doors());
+    }
+
+    // Spatial lookups, each only checks the doors of the chunk sections involved
+
+    public List<Door> getVirtualDoorsAt(Location location) {
+        return virtualDoors.getAt(location.getWorld().getUID(), location.getBlockX(), location.getBlockY(), location.getBlockZ());
+    }
+
+    public List<Door> getVirtualDoorsIntersecting(World world, int xMin, int yMin, int zMin, int xMax, int yMax, int zMax) {
+        return virtualDoors.getIntersecting(world.getUID(), xMin, yMin, zMin, xMax, yMax, zMax);
+    }
+
+    public List<Door> getVirtualDoorsInChunk(Chunk chunk) {
+        return virtualDoors.getInChunk(chunk.getWorld().getUID(), chunk.getX(), chunk.getZ());
+    }
 
-        return doorsCount;
+    public LongSet getVirtualPowerBlockChunks(World world) {
+        return virtualDoors.getPowerBlockChunks(world.getUID());
     }
 
-    public int loadVirtualDoors(String saveName, World targetWorld, boolean editMode) {
-        var worldsSection = plugin.getConfig().getConfigurationSection("worlds");
-        if (worldsSection == null) {
-            return 0;
+    // Records changes made to doors of edit-mode instances, so they survive a crash before the next save
+    private void journal(@Nullable Door door, Supplier<ByteBuffer> record) {
+        if (door == null) {
+            return;
+        }
+        var instance = BigDoorsDungeons.getDungeonInstance(door.getWorld());
+        if (instance == null || !instance.isEditMode()) {
+            return;
+        }
+        templateWriter.append(instance.getDungeon().getWorldName(), record.get());
+    }
+
+    // Same as above for doors still stored, without building a Door just for its name
+    private void journal(long doorUID, Function<String, ByteBuffer> record) {
+        var world = virtualDoors.getWorld(doorUID);
+        if (world == null) {
+            return;
+        }
+        var instance = BigDoorsDungeons.getDungeonInstance(world);
+        if (instance == null || !instance.isEditMode()) {
+            return;
+        }
+        templateWriter.append(instance.getDungeon().getWorldName(), record.apply(virtualDoors.getName(doorUID)));
+    }
+
+    private int getVirtualPermission(PermissionCache.Grants grants, long doorUID) {
+        if (grants.admin()) {
+            return PermissionCache.OWNER;
+        }
+        var world = virtualDoors.getWorld(doorUID);
+        var instance = world == null ? null : BigDoorsDungeons.getDungeonInstance(world);
+        if (instance == null) {
+            return PermissionCache.NONE;
         }
-        var worldSection = worldsSection.getConfigurationSection(saveName);
-        if (worldSection == null) {
-            return 0;
+        return grants.getPermission(instance.getDungeon().getWorldName(), virtualDoors.getBaseName(doorUID));
+    }
+
+    // Called once SQLite has the change, so a read racing the write never caches the old door
+    private void invalidateRealDoor(long doorUID) {
+        if (realDoors != null) {
+            realDoors.invalidate(doorUID);
         }
+    }
 
-        var doorsCount = 0;
+    // Real door updates, written right away or queued for the next flush when write-behind is enabled
 
-        for (var doorSectionKey : worldSection.getKeys(false)) {
-            var doorSection = Objects.requireNonNull(worldSection.getConfigurationSection(doorSectionKey));
+    private void updateRealDoor(long doorUID, PendingUpdate update) {
+        if (updates != null) {
+            updates.enqueue(doorUID, update);
+            return;
+        }
+        try {
+            writePendingUpdates(Map.of(doorUID, update));
+        } catch (SQLException e) {
+            plugin.getSLF4JLogger().error("Unable to update door " + doorUID, e);
+        }
+    }
+
+    // One connection and one transaction for the whole batch, a failed write leaves every door as it was
+    private void writePendingUpdates(Map<Long, PendingUpdate> pendingUpdates) throws SQLException {
+        try (var connection = DriverManager.getConnection(databaseURL)) {
+            connection.setAutoCommit(false);
+            try (var statement = connection.prepareStatement(UPDATE_DOOR_SQL)) {
+                for (var entry : pendingUpdates.entrySet()) {
+                    var update = entry.getValue();
+                    var coords = update.coords();
+                    setNullableInt(statement, 1, update.blocksToMove());
+                    setNullableInt(statement, 2, coords == null ? null : coords.open() ? 1 : 0);
+                    setNullableInt(statement, 3, coords == null ? null : coords.xMin());
+                    setNullableInt(statement, 4, coords == null ? null : coords.yMin());
+                    setNullableInt(statement, 5, coords == null ? null : coords.zMin());
+                    setNullableInt(statement, 6, coords == null ? null : coords.xMax());
+                    setNullableInt(statement, 7, coords == null ? null : coords.yMax());
+                    setNullableInt(statement, 8, coords == null ? null : coords.zMax());
+                    setNullableInt(statement, 9, coords == null ? null : DoorDirection.getValue(coords.engSide()));
+                    setNullableInt(statement, 10, update.autoClose());
+                    setNullableInt(statement, 11, update.notificationEnabled() == null ? null : update.notificationEnabled() ? 1 : 0);
+                    setNullableInt(statement, 12, update.bypassProtections() == null ? null : update.bypassProtections() ? 1 : 0);
+                    setNullableInt(statement, 13, update.openDir() == null ? null : RotateDirection.getValue(update.openDir()));
+                    setNullableInt(statement, 14, update.locked() == null ? null : update.locked() ? 1 : 0);
+                    statement.setLong(15, entry.getKey());
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+        }
+        pendingUpdates.keySet().forEach(this::invalidateRealDoor);
+    }
 
-            var min = Objects.requireNonNull(doorSection.getVector("min")).toLocation(targetWorld);
-            var max = Objects.requireNonNull(doorSection.getVector("max")).toLocation(targetWorld);
-            var engine = Objects.requireNonNull(doorSection.getVector("engine")).toLocation(targetWorld);
-            var powerBlock = Objects.requireNonNull(doorSection.getVector("powerBlock")).toLocation(targetWorld);
+    private static void setNullableInt(PreparedStatement statement, int index, @Nullable Integer value) throws SQLException {
+        if (value == null) {
+            statement.setNull(index, Types.INTEGER);
+        } else {
+            statement.setInt(index, value);
+        }
+    }
 
-            var name = doorSectionKey;
-            if (!editMode) {
-                name = name + "_" + targetWorld.getName();
+    // Reads real doors and applies what's still queued for them on top. A flush ending mid-read may have dropped
+    // an update from the queue before the read saw it committed, the read is done again then
+    private <T> T readRealDoors(Supplier<T> read, UnaryOperator<T> applyPendingUpdates) {
+        if (updates == null) {
+            return read.get();
+        }
+        while (true) {
+            var flushSequence = updates.getFlushSequence();
+            var doors = read.get();
+            if (!updates.isEmpty()) {
+                doors = applyPendingUpdates.apply(doors);
             }
+            if (flushSequence == updates.getFlushSequence()) {
+                return doors;
+            }
+        }
+    }
 
-            var door = new Door(
-                    VIRTUAL_DOOR_OWNER_UUID,
-                    VIRTUAL_DOOR_OWNER_NAME,
-                    VIRTUAL_DOOR_OWNER_UUID,
-                    targetWorld,
-                    min,
-                    max,
-                    engine,
-                    name, // we need suffix to make it unique
-                    doorSection.getBoolean("open"),
-                    lastVirtualDoorId.decrementAndGet(), // Door id
-                    doorSection.getBoolean("locked"),
-                    0,
-                    DoorType.valueOf(doorSection.getString("type")),
-                    DoorDirection.valueOf(doorSection.getString("engSide")),
-                    powerBlock,
-                    RotateDirection.valueOf(doorSection.getString("openDir")),
-                    doorSection.getInt("autoClose"),
-                    doorSection.getBoolean("notify"),
-                    doorSection.getBoolean("bypassProtections")
-            );
-            door.setBlocksToMove(doorSection.getInt("blocksToMove"));
-
-            virtualDoors.put(door.getDoorUID(), door);
-            virtualDoorsByName.put(door.getName(), door);
-
-            doorsCount++;
-        }
-
-        return doorsCount;
+    @Nullable
+    private Door applyPendingUpdates(@Nullable Door door) {
+        var update = door == null ? null : updates.get(door.getDoorUID());
+        return update == null ? door : update.applyTo(door);
+    }
+
+    private ArrayList<Door> applyPendingUpdatesToAll(ArrayList<Door> doors) {
+        doors.replaceAll(this::applyPendingUpdates);
+        return doors;
     }
 
     // Overrides
 
     @Override
     public int getPermission(String playerUUID, long doorUID) {
+        var start = System.nanoTime();
         if (doorUID >= 0) {
-            return super.getPermission(playerUUID, doorUID);
+            var permission = super.getPermission(playerUUID, doorUID);
+            stats.record(Op.GET_PERMISSION, false, start);
+            return permission;
         }
-        var onlinePlayer = Bukkit.getPlayer(UUID.fromString(playerUUID));
-        if (onlinePlayer != null && onlinePlayer.hasPermission("bigdoorsdungeons.admin")) {
-            return 0;
-        }
-        return -1;
+        var grants = permissions.get(playerUUID);
+        var permission = grants.any() ? getVirtualPermission(grants, doorUID) : PermissionCache.NONE;
+        stats.record(Op.GET_PERMISSION, true, start);
+        return permission;
     }
 
     @Nullable
     @Override
     public Door removeDoor(long doorID) {
+        var start = System.nanoTime();
         if (doorID >= 0) {
-            return super.removeDoor(doorID);
+            if (updates != null) {
+                updates.discard(doorID);
+            }
+            var door = super.removeDoor(doorID);
+            invalidateRealDoor(doorID);
+            stats.record(Op.REMOVE_DOOR, false, start);
+            return door;
         }
         var door = virtualDoors.remove(doorID);
-        if (door == null) {
-            return null;
+        if (door != null) {
+            journal(door, () -> DoorJournal.remove(door.getName()));
         }
-        virtualDoorsByName.remove(door.getName());
+        stats.record(Op.REMOVE_DOOR, true, start);
         return door;
     }
 
     @Override
     public List<Door> removeDoorsFromWorld(World world) {
-        if (!BigDoorsDungeons.isDungeonWorld(world)) {
-            return super.removeDoorsFromWorld(world);
-        }
-        var removedDoors = new ArrayList<Door>();
-        virtualDoors.values().removeIf(door -> {
-            if (door.getWorld().equals(world)) {
-                removedDoors.add(door);
-                virtualDoorsByName.remove(door.getName());
-                return true;
+        var start = System.nanoTime();
+        if (!BigDoorsDungeons.isDungeonWorld(world) && virtualDoors.size(world.getUID()) == 0) {
+            // Updates still queued for these doors will update rows that are gone
+            var doors = super.removeDoorsFromWorld(world);
+            if (realDoors != null) {
+                realDoors.invalidateAll();
             }
-            return false;
-        });
-        return removedDoors;
+            stats.record(Op.REMOVE_DOORS_FROM_WORLD, false, start);
+            return doors;
+        }
+        var doors = virtualDoors.removeWorld(world.getUID());
+        stats.record(Op.REMOVE_DOORS_FROM_WORLD, true, start);
+        return doors;
     }
 
     @Override
     public Door getDoor(@Nullable UUID playerUUID, long doorUID, boolean includeNonOwners) {
+        var start = System.nanoTime();
         if (doorUID >= 0) {
-            return super.getDoor(playerUUID, doorUID, includeNonOwners);
+            var door = readRealDoors(() -> realDoors == null
+                    ? super.getDoor(playerUUID, doorUID, includeNonOwners)
+                    : realDoors.getDoor(playerUUID, doorUID, includeNonOwners, () -> super.getDoor(playerUUID, doorUID, includeNonOwners)), this::applyPendingUpdates);
+            stats.record(Op.GET_DOOR, false, start);
+            return door;
         }
-        return virtualDoors.get(doorUID);
+        var door = virtualDoors.get(doorUID);
+        stats.record(Op.GET_DOOR, true, start);
+        return door;
     }
 
     @Override
     public Set<Door> getDoors() {
-        var doors = new HashSet<>(super.getDoors());
-        doors.addAll(virtualDoors.values());
-        return doors;
+        var start = System.nanoTime();
+        var stored = readRealDoors(super::getDoors, doors -> {
+            var updated = new HashSet<Door>(doors.size() * 2);
+            doors.forEach(door -> updated.add(applyPendingUpdates(door)));
+            return updated;
+        });
+        stats.record(Op.GET_DOORS, false, start);
+        var virtual = virtualDoors.getAll();
+        if (virtual.isEmpty()) {
+            return stored;
+        }
+        return new MergedDoorSet(stored, virtual);
     }
 
     @Override
     public ArrayList<Door> getDoors(String name) {
-        var doors = new ArrayList<>(super.getDoors(name));
-        doors.addAll(virtualDoors.values().stream().filter(door -> door.getName().equals(name)).toList());
+        var start = System.nanoTime();
+        var doors = readRealDoors(() -> super.getDoors(name), this::applyPendingUpdatesToAll); // Fresh list, no need to copy it
+        stats.record(Op.GET_DOORS_BY_NAME, false, start);
+        start = System.nanoTime();
+        var virtual = virtualDoors.getByName(name);
+        if (!virtual.isEmpty()) {
+            doors.ensureCapacity(doors.size() + virtual.size());
+            doors.addAll(virtual);
+        }
+        stats.record(Op.GET_DOORS_BY_NAME, true, start);
         return doors;
     }
 
     @Override
     public ArrayList<Door> getDoors(String playerUUIDStr, String name, long start, long end) {
-        var doors = super.getDoors(playerUUIDStr, name, start, end);
-        var onlinePlayer = Bukkit.getPlayer(UUID.fromString(playerUUIDStr));
-        if (onlinePlayer != null && onlinePlayer.hasPermission("bigdoorsdungeons.admin")) {
-            var matchedVirtualDoors = virtualDoors.values().stream()
-                    .filter(door -> name == null || door.getName().equals(name))
-                    .toList();
-            doors.addAll(matchedVirtualDoors);
-        }
+        var startNanos = System.nanoTime();
+        var doors = readRealDoors(() -> super.getDoors(playerUUIDStr, name, start, end), this::applyPendingUpdatesToAll);
+        stats.record(Op.GET_DOORS_PAGE, false, startNanos);
+        startNanos = System.nanoTime();
+        var grants = permissions.get(playerUUIDStr);
+        // end is inclusive, as in the SQLite storage
+        var pageSize = end - start >= Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) (end - start + 1);
+        if (grants.any() && doors.size() < pageSize) {
+            // Virtual doors are numbered after the player's real ones, the page only reaches them once those ran out
+            var realCount = doors.isEmpty() ? super.countDoors(playerUUIDStr, name) : start + doors.size();
+            LongPredicate filter = grants.admin() ? null : doorUID -> getVirtualPermission(grants, doorUID) >= 0;
+            doors.addAll(virtualDoors.getPage(null, null, name, filter, Math.max(start - realCount, 0), pageSize - doors.size()));
+        }
+        stats.record(Op.GET_DOORS_PAGE, true, startNanos);
         return doors;
     }
 
     @Override
     public ArrayList<Door> getDoorsInWorld(World world) {
+        var start = System.nanoTime();
         if (!BigDoorsDungeons.isDungeonWorld(world)) {
-            return super.getDoorsInWorld(world);
+            var doors = readRealDoors(() -> super.getDoorsInWorld(world), this::applyPendingUpdatesToAll);
+            stats.record(Op.GET_DOORS_IN_WORLD, false, start);
+            return doors;
         }
-        return (ArrayList<Door>) virtualDoors.values()
-                .stream()
-                .filter(door -> door.getWorld().equals(world))
-                .collect(Collectors.toList());
+        var doors = new ArrayList<>(virtualDoors.getInWorld(world.getUID()));
+        stats.record(Op.GET_DOORS_IN_WORLD, true, start);
+        return doors;
     }
 
     /* UUID <-> name related methods, not needed
@@ -244,22 +473,31 @@ public class HookedDoorStorage extends SQLiteJDBCDriverConnection {
 
     @Override
     public DoorOwner getOwnerOfDoor(long doorUID) {
+        var start = System.nanoTime();
         if (doorUID >= 0) {
-            return super.getOwnerOfDoor(doorUID);
-        }
-        var door = virtualDoors.get(doorUID);
-        if (door == null) {
-            return null;
+            var owner = realDoors == null ? super.getOwnerOfDoor(doorUID) : realDoors.getOwner(doorUID, () -> super.getOwnerOfDoor(doorUID));
+            stats.record(Op.GET_OWNER, false, start);
+            return owner;
         }
-        return new DoorOwner(BigDoors.get(), doorUID, VIRTUAL_DOOR_OWNER_UUID, 0, VIRTUAL_DOOR_OWNER_NAME);
+        var owner = !virtualDoors.contains(doorUID) ? null : new DoorOwner(BigDoors.get(), doorUID, VirtualDoorIndex.OWNER_UUID, 0, VirtualDoorIndex.OWNER_NAME);
+        stats.record(Op.GET_OWNER, true, start);
+        return owner;
     }
 
-    /* FIXME: implement for virtual doors
     @Override
     public HashMap<Long, Long> getPowerBlockData(long chunkHash) {
-        return super.getPowerBlockData(chunkHash);
+        var start = System.nanoTime();
+        var chunkPowerBlocks = virtualDoors.getPowerBlocks(chunkHash);
+        if (chunkPowerBlocks == null) {
+            // Power block moves are never queued
+            var powerBlocks = super.getPowerBlockData(chunkHash);
+            stats.record(Op.GET_POWER_BLOCK_DATA, false, start);
+            return powerBlocks;
+        }
+        stats.record(Op.GET_POWER_BLOCK_DATA, true, start);
+        // Chunk hashes include the world, real doors never live in dungeon worlds
+        return chunkPowerBlocks.boxed();
     }
-    */
 
     /* No need to recalculate hashes for virtual doors
     @Override
@@ -270,127 +508,163 @@ public class HookedDoorStorage extends SQLiteJDBCDriverConnection {
 
     @Override
     public void updateDoorBlocksToMove(long doorID, int blocksToMove) {
+        var start = System.nanoTime();
         if (doorID >= 0) {
-            super.updateDoorBlocksToMove(doorID, blocksToMove);
+            updateRealDoor(doorID, PendingUpdate.blocksToMove(blocksToMove));
+            stats.record(Op.UPDATE_DOOR, false, start);
             return;
         }
-        var door = virtualDoors.get(doorID);
-        if (door == null) {
-            return;
+        if (virtualDoors.setBlocksToMove(doorID, blocksToMove)) {
+            journal(doorID, name -> DoorJournal.blocksToMove(name, blocksToMove));
         }
-        door.setBlocksToMove(blocksToMove);
+        stats.record(Op.UPDATE_DOOR, true, start);
     }
 
     @Override
     public void updateDoorCoords(long doorID, boolean isOpen, int xMin, int yMin, int zMin, int xMax, int yMax, int zMax, DoorDirection engSide) {
-        if (doorID < 0) {
-            // Already updated in-memory
+        var start = System.nanoTime();
+        if (doorID >= 0) {
+            updateRealDoor(doorID, PendingUpdate.coords(new Coords(isOpen, xMin, yMin, zMin, xMax, yMax, zMax, engSide)));
+            stats.record(Op.UPDATE_DOOR, false, start);
             return;
         }
-        super.updateDoorCoords(doorID, isOpen, xMin, yMin, zMin, xMax, yMax, zMax, engSide);
+        // BigDoors moved its own copy of the door, the index has to follow
+        if (virtualDoors.setCoords(doorID, isOpen, xMin, yMin, zMin, xMax, yMax, zMax, engSide)) {
+            journal(doorID, name -> DoorJournal.coords(name, isOpen, xMin, yMin, zMin, xMax, yMax, zMax, engSide));
+        }
+        stats.record(Op.UPDATE_DOOR, true, start);
     }
 
     @Override
     public void updateDoorAutoClose(long doorID, int autoClose) {
+        var start = System.nanoTime();
         if (doorID >= 0) {
-            super.updateDoorAutoClose(doorID, autoClose);
+            updateRealDoor(doorID, PendingUpdate.autoClose(autoClose));
+            stats.record(Op.UPDATE_DOOR, false, start);
             return;
         }
-        var door = virtualDoors.get(doorID);
-        if (door == null) {
-            return;
-        }
-        try {
-            FieldUtils.writeDeclaredField(door, "autoClose", autoClose, true);
-        } catch (IllegalAccessException e) {
-            throw new RuntimeException(e);
+        if (virtualDoors.setAutoClose(doorID, autoClose)) {
+            journal(doorID, name -> DoorJournal.autoClose(name, autoClose));
         }
+        stats.record(Op.UPDATE_DOOR, true, start);
     }
 
     @Override
     public void updateNotify(long doorUID, boolean notify) {
+        var start = System.nanoTime();
         if (doorUID >= 0) {
-            super.updateNotify(doorUID, notify);
+            updateRealDoor(doorUID, PendingUpdate.notificationEnabled(notify));
+            stats.record(Op.UPDATE_DOOR, false, start);
             return;
         }
-        var door = virtualDoors.get(doorUID);
-        if (door == null) {
-            return;
+        if (virtualDoors.setNotificationEnabled(doorUID, notify)) {
+            journal(doorUID, name -> DoorJournal.notificationEnabled(name, notify));
         }
-        door.setNotificationEnabled(notify);
+        stats.record(Op.UPDATE_DOOR, true, start);
     }
 
     @Override
     public void updateBypassProtections(long doorUID, boolean bypassProtections) {
+        var start = System.nanoTime();
         if (doorUID >= 0) {
-            super.updateBypassProtections(doorUID, bypassProtections);
+            updateRealDoor(doorUID, PendingUpdate.bypassProtections(bypassProtections));
+            stats.record(Op.UPDATE_DOOR, false, start);
             return;
         }
-        var door = virtualDoors.get(doorUID);
-        if (door == null) {
-            return;
+        if (virtualDoors.setBypassProtections(doorUID, bypassProtections)) {
+            journal(doorUID, name -> DoorJournal.bypassProtections(name, bypassProtections));
         }
-        door.setBypassProtections(bypassProtections);
+        stats.record(Op.UPDATE_DOOR, true, start);
     }
 
     @Override
     public void updateDoorOpenDirection(long doorID, RotateDirection openDir) {
+        var start = System.nanoTime();
         if (doorID >= 0) {
-            super.updateDoorOpenDirection(doorID, openDir);
+            updateRealDoor(doorID, PendingUpdate.openDir(openDir));
+            stats.record(Op.UPDATE_DOOR, false, start);
             return;
         }
-        var door = virtualDoors.get(doorID);
-        if (door == null) {
-            return;
+        if (virtualDoors.setOpenDir(doorID, openDir)) {
+            journal(doorID, name -> DoorJournal.openDir(name, openDir));
         }
-        door.setOpenDir(openDir);
+        stats.record(Op.UPDATE_DOOR, true, start);
     }
 
     @Override
     public void updateDoorPowerBlockLoc(long doorID, int xPos, int yPos, int zPos, UUID worldUUID) {
-        if (doorID < 0) {
-            // Power blocks are unsupported in virtual doors
+        var start = System.nanoTime();
+        if (doorID >= 0) {
+            // Written right away, power block lookups then never have to wait on the queue
+            super.updateDoorPowerBlockLoc(doorID, xPos, yPos, zPos, worldUUID);
+            invalidateRealDoor(doorID);
+            stats.record(Op.UPDATE_DOOR, false, start);
             return;
         }
-        super.updateDoorPowerBlockLoc(doorID, xPos, yPos, zPos, worldUUID);
+        if (virtualDoors.setPowerBlock(doorID, xPos, yPos, zPos)) {
+            journal(doorID, name -> DoorJournal.powerBlock(name, xPos, yPos, zPos));
+        }
+        stats.record(Op.UPDATE_DOOR, true, start);
     }
 
     @Override
     public boolean isPowerBlockLocationEmpty(Location loc) {
+        var start = System.nanoTime();
         if (!BigDoorsDungeons.isDungeonWorld(loc.getWorld())) {
-            return super.isPowerBlockLocationEmpty(loc);
+            var empty = super.isPowerBlockLocationEmpty(loc);
+            stats.record(Op.IS_POWER_BLOCK_LOCATION_EMPTY, false, start);
+            return empty;
         }
-        return true; // Power blocks are unsupported in virtual doors
+        var worldUID = loc.getWorld().getUID();
+        var chunkPowerBlocks = virtualDoors.getPowerBlocks(Util.chunkHashFromLocation(loc.getBlockX(), loc.getBlockZ(), worldUID));
+        var empty = chunkPowerBlocks == null || !chunkPowerBlocks.byLocation().containsKey(Util.locationHash(loc.getBlockX(), loc.getBlockY(), loc.getBlockZ(), worldUID));
+        stats.record(Op.IS_POWER_BLOCK_LOCATION_EMPTY, true, start);
+        return empty;
     }
 
     @Override
     public void setLock(long doorID, boolean newLockStatus) {
+        var start = System.nanoTime();
         if (doorID >= 0) {
-            super.setLock(doorID, newLockStatus);
+            updateRealDoor(doorID, PendingUpdate.locked(newLockStatus));
+            stats.record(Op.UPDATE_DOOR, false, start);
             return;
         }
-        var door = virtualDoors.get(doorID);
-        if (door == null) {
-            return;
+        if (virtualDoors.setLocked(doorID, newLockStatus)) {
+            journal(doorID, name -> DoorJournal.locked(name, newLockStatus));
         }
-        door.setLock(newLockStatus);
+        stats.record(Op.UPDATE_DOOR, true, start);
     }
 
     @Override
     public long insert(Door door) {
+        var start = System.nanoTime();
         if (!BigDoorsDungeons.isDungeonWorld(door.getWorld())) {
-            return super.insert(door);
+            var doorUID = super.insert(door);
+            invalidateRealDoor(doorUID); // A lookup of the new UID may have cached a missing door
+            stats.record(Op.INSERT, false, start);
+            return doorUID;
+        }
+        // Only edit-mode instances create doors, their names carry no suffix
+        var min = door.getMinimum();
+        var max = door.getMaximum();
+        for (var overlapping : getVirtualDoorsIntersecting(door.getWorld(), min.getBlockX(), min.getBlockY(), min.getBlockZ(), max.getBlockX(), max.getBlockY(), max.getBlockZ())) {
+            plugin.getSLF4JLogger().warn("Door " + door.getName() + " overlaps door " + overlapping.getName() + " in dungeon world " + door.getWorld().getName());
         }
-        door = new Door(door.getPrimeOwner(), door.getPlayerName(), door.getPrimeOwner(), door.getWorld(), door.getMinimum(), door.getMaximum(), door.getEngine(), door.getName(), door.isOpen(), lastVirtualDoorId.decrementAndGet(), door.isLocked(), door.getPermission(), door.getType(), door.getLookingDir(), door.getPowerBlockLoc(), door.getOpenDir(), door.getAutoClose(), door.notificationEnabled(), door.bypassProtections());
-        virtualDoors.put(door.getDoorUID(), door);
-        virtualDoorsByName.put(door.getName(), door);
-        return door.getDoorUID();
+        var doorUID = virtualDoors.reserve(door.getWorld().getUID(), 1);
+        var template = DoorTemplate.of(door);
+        virtualDoors.add(door.getWorld(), BigDoorsDungeons.getDungeonInstance(door.getWorld()).getDungeon().getWorldName(), "", doorUID, template);
+        journal(doorUID, name -> DoorJournal.insert(template));
+        stats.record(Op.INSERT, true, start);
+        return doorUID;
     }
 
     @Override
     public boolean removeOwner(long doorUID, UUID playerUUID) {
         if (doorUID >= 0) {
-            return super.removeOwner(doorUID, playerUUID);
+            var removed = super.removeOwner(doorUID, playerUUID);
+            invalidateRealDoor(doorUID);
+            return removed;
         }
         return false;
     }
@@ -398,7 +672,7 @@ public class HookedDoorStorage extends SQLiteJDBCDriverConnection {
     @Override
     public ArrayList<DoorOwner> getOwnersOfDoor(long doorUID, @Nullable UUID playerUUID) {
         if (doorUID >= 0) {
-            return super.getOwnersOfDoor(doorUID, playerUUID);
+            return realDoors == null ? super.getOwnersOfDoor(doorUID, playerUUID) : realDoors.getOwners(doorUID, playerUUID, () -> super.getOwnersOfDoor(doorUID, playerUUID));
         }
         return new ArrayList<>();
     }
@@ -409,6 +683,7 @@ public class HookedDoorStorage extends SQLiteJDBCDriverConnection {
             return;
         }
         super.addOwner(doorUID, playerUUID, permission);
+        invalidateRealDoor(doorUID);
     }
 
     /* Virtual doors shouldn't be counted in the player door count
@@ -0,0 +1,46 @@
+package it.novaverse.bigdoorsdungeons;
+
+import net.luckperms.api.LuckPerms;
+import net.luckperms.api.event.EventSubscription;
+import net.luckperms.api.event.user.UserDataRecalculateEvent;
+
+// Refreshes a player's cached door permissions whenever LuckPerms recalculates them, in place of the periodic refresh
+public class LuckPermsHook {
+
+    private final BigDoorsDungeons plugin;
+    private final PermissionCache permissions;
+    private EventSubscription<UserDataRecalculateEvent> subscription;
+
+    public LuckPermsHook(BigDoorsDungeons plugin, PermissionCache permissions) {
+        this.plugin = plugin;
+        this.permissions = permissions;
+    }
+
+    public boolean register() {
+        var registration = plugin.getServer().getServicesManager().getRegistration(LuckPerms.class);
+        if (registration == null) {
+            return false;
+        }
+        subscription = registration.getProvider().getEventBus().subscribe(plugin, UserDataRecalculateEvent.class, this::onRecalculate);
+        return true;
+    }
+
+    public void unregister() {
+        if (subscription != null) {
+            subscription.close();
+            subscription = null;
+        }
+    }
+
+    // Fired from LuckPerms' own threads, permissions are read on the main thread.
+    // Players still logging in aren't online yet, they're refreshed on join
+    private void onRecalculate(UserDataRecalculateEvent event) {
+        var playerUUID = event.getUser().getUniqueId();
+        plugin.getServer().getScheduler().runTask(plugin, () -> {
+            var player = plugin.getServer().getPlayer(playerUUID);
+            if (player != null) {
+                permissions.refresh(player);
+            }
+        });
+    }
+}
@@ -0,0 +1,50 @@
+package it.novaverse.bigdoorsdungeons;
+
+import nl.pim16aap2.bigDoors.Door;
+
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Set;
+
+// Read-only view over the stored doors followed by the virtual ones, they never overlap
+final class MergedDoorSet extends AbstractSet<Door> {
+
+    private final Set<Door> stored;
+    private final Collection<Door> virtual;
+
+    MergedDoorSet(Set<Door> stored, Collection<Door> virtual) {
+        this.stored = stored;
+        this.virtual = virtual;
+    }
+
+    @Override
+    public Iterator<Door> iterator() {
+        var storedIterator = stored.iterator();
+        var virtualIterator = virtual.iterator();
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return storedIterator.hasNext() || virtualIterator.hasNext();
+            }
+
+            @Override
+            public Door next() {
+                return storedIterator.hasNext() ? storedIterator.next() : virtualIterator.next();
+            }
+        };
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (o instanceof Door door && door.getDoorUID() < 0) {
+            return virtual.contains(door);
+        }
+        return stored.contains(o);
+    }
+
+    @Override
+    public int size() {
+        return stored.size() + virtual.size();
+    }
+}
@@ -0,0 +1,142 @@
+package it.novaverse.bigdoorsdungeons;
+
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerChangedWorldEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Virtual door permissions of online players, resolved on the main thread and read by BigDoors from any thread.
+// Keyed by the UUID string BigDoors passes around, so a lookup never parses a UUID or walks the permission tree.
+// Bukkit has no event for permission changes: with LuckPerms a player is refreshed when LuckPerms recalculates them,
+// without it every player is refreshed periodically. Join and world changes refresh either way.
+public class PermissionCache implements Listener, Runnable {
+
+    public static final String ADMIN_PERMISSION = "bigdoorsdungeons.admin";
+    // bigdoorsdungeons.dungeon.<dungeon> and bigdoorsdungeons.door.<dungeon>.<door>, by dungeon world name and door template name.
+    // The wildcards dungeon.*, door.* and door.<dungeon>.* are matched here, permission plugins list them as they are
+    public static final String DUNGEON_PERMISSION_PREFIX = "bigdoorsdungeons.dungeon.";
+    public static final String DOOR_PERMISSION_PREFIX = "bigdoorsdungeons.door.";
+    private static final String WILDCARD = "*";
+
+    // BigDoors permission levels: 0 is the creator, 2 can only use the door, -1 has no access
+    public static final int OWNER = 0;
+    public static final int USER = 2;
+    public static final int NONE = -1;
+
+    private static final Grants NO_GRANTS = new Grants(false, false, Set.of(), Map.of());
+
+    private final BigDoorsDungeons plugin;
+    private final Map<String, Grants> grants;
+
+    public PermissionCache(BigDoorsDungeons plugin) {
+        this.plugin = plugin;
+        grants = new ConcurrentHashMap<>();
+    }
+
+    // Grants of an online player, none for players that aren't online
+    public Grants get(String playerUUID) {
+        return grants.getOrDefault(playerUUID, NO_GRANTS);
+    }
+
+    public void refresh(Player player) {
+        var allDungeons = false;
+        var dungeons = new HashSet<String>();
+        var doors = new HashMap<String, Set<String>>();
+        for (var info : player.getEffectivePermissions()) {
+            if (!info.getValue()) {
+                continue;
+            }
+            // Permission nodes are stored lowercase
+            var permission = info.getPermission().toLowerCase(Locale.ROOT);
+            if (permission.startsWith(DUNGEON_PERMISSION_PREFIX)) {
+                var dungeon = permission.substring(DUNGEON_PERMISSION_PREFIX.length());
+                if (dungeon.equals(WILDCARD)) {
+                    allDungeons = true;
+                } else {
+                    dungeons.add(dungeon);
+                }
+            } else if (permission.startsWith(DOOR_PERMISSION_PREFIX)) {
+                var door = permission.substring(DOOR_PERMISSION_PREFIX.length());
+                var separator = door.indexOf('.');
+                if (door.equals(WILDCARD)) {
+                    allDungeons = true;
+                } else if (separator > 0 && door.substring(separator + 1).equals(WILDCARD)) {
+                    dungeons.add(door.substring(0, separator)); // Every door of the dungeon
+                } else if (separator > 0) {
+                    doors.computeIfAbsent(door.substring(0, separator), dungeon -> new HashSet<>()).add(door.substring(separator + 1));
+                }
+            }
+        }
+        grants.put(player.getUniqueId().toString(), new Grants(player.hasPermission(ADMIN_PERMISSION), allDungeons, Set.copyOf(dungeons), Map.copyOf(doors)));
+    }
+
+    public void refreshAll() {
+        plugin.getServer().getOnlinePlayers().forEach(this::refresh);
+    }
+
+    public void clear() {
+        grants.clear();
+    }
+
+    // Entries of players that left, the quit listener should never let any through
+    public List<String> verify() {
+        return grants.keySet().stream()
+                .filter(playerUUID -> plugin.getServer().getPlayer(UUID.fromString(playerUUID)) == null)
+                .map(playerUUID -> "Permissions still cached for offline player " + playerUUID)
+                .toList();
+    }
+
+    // Periodic refresh without LuckPerms, picks up permissions changed while the player stays online
+    @Override
+    public void run() {
+        refreshAll();
+    }
+
+    @EventHandler(priority = EventPriority.LOWEST)
+    public void onJoin(PlayerJoinEvent event) {
+        refresh(event.getPlayer());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onWorldChange(PlayerChangedWorldEvent event) {
+        refresh(event.getPlayer()); // Permission plugins may grant per world
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onQuit(PlayerQuitEvent event) {
+        grants.remove(event.getPlayer().getUniqueId().toString());
+    }
+
+    public record Grants(boolean admin, boolean allDungeons, Set<String> dungeons, Map<String, Set<String>> doors) {
+
+        // Whether the player may access any virtual door at all, when false there's no door to resolve
+        public boolean any() {
+            return admin || allDungeons || !dungeons.isEmpty() || !doors.isEmpty();
+        }
+
+        public int getPermission(@Nullable String dungeonName, @Nullable String baseName) {
+            if (admin) {
+                return OWNER;
+            }
+            if (dungeonName == null) {
+                return NONE;
+            }
+            if (allDungeons) {
+                return USER;
+            }
+            var dungeonKey = dungeonName.toLowerCase(Locale.ROOT);
+            if (dungeons.contains(dungeonKey)) {
+                return USER;
+            }
+            var dungeonDoors = doors.get(dungeonKey);
+            return dungeonDoors != null && baseName != null && dungeonDoors.contains(baseName.toLowerCase(Locale.ROOT)) ? USER : NONE;
+        }
+    }
+}
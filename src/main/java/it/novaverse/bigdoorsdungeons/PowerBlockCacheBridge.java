@@ -0,0 +1,52 @@
+package it.novaverse.bigdoorsdungeons;
+
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import nl.pim16aap2.bigDoors.BigDoors;
+import nl.pim16aap2.bigDoors.Door;
+import nl.pim16aap2.bigDoors.util.Util;
+import org.bukkit.World;
+
+import java.util.Collection;
+
+// Keeps the BigDoors power block cache in step with the virtual doors.
+// The cache is keyed by chunk hash, so every operation first collapses doors to the distinct chunks of their power blocks.
+public class PowerBlockCacheBridge {
+
+    private final BigDoors bigDoors;
+    private final HookedDoorStorage storage;
+
+    public PowerBlockCacheBridge(BigDoors bigDoors, HookedDoorStorage storage) {
+        this.bigDoors = bigDoors;
+        this.storage = storage;
+    }
+
+    // Fills the chunks of a world's freshly published doors, replacing anything cached while the world was still empty
+    public void warm(World world) {
+        var cache = bigDoors.getPBCache();
+        for (var chunkHash : storage.getVirtualPowerBlockChunks(world)) {
+            cache.put(chunkHash, storage.getPowerBlockData(chunkHash));
+        }
+    }
+
+    public void evict(Collection<Door> doors) {
+        var cache = bigDoors.getPBCache();
+        for (var chunkHash : chunkHashes(doors)) {
+            cache.invalidate(chunkHash);
+        }
+    }
+
+    // Drops the chunks of every virtual door, entries of real doors stay cached
+    public void evictAll() {
+        evict(storage.getVirtualDoors());
+    }
+
+    private static LongSet chunkHashes(Collection<Door> doors) {
+        var chunkHashes = new LongOpenHashSet(doors.size());
+        for (var door : doors) {
+            var powerBlock = door.getPowerBlockLoc();
+            chunkHashes.add(Util.chunkHashFromLocation(powerBlock.getBlockX(), powerBlock.getBlockZ(), door.getWorld().getUID()));
+        }
+        return chunkHashes;
+    }
+}
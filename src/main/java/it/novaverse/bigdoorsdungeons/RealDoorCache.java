@@ -0,0 +1,172 @@
+package it.novaverse.bigdoorsdungeons;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import nl.pim16aap2.bigDoors.Door;
+import nl.pim16aap2.bigDoors.util.DoorOwner;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+// Read-through cache of real doors and their owners in front of the SQLite storage.
+// Every lookup is its own entry, keyed by door and by who's asking, so the bound holds however many players look at
+// the same door. Least recently used entries are evicted first. Every write the storage intercepts invalidates the door,
+// so entries never outlive a change made through BigDoors. Guarded by a single lock, JDBC misses run outside of it.
+//
+// Door objects are mutable and BigDoors moves the ones it's given, so a cached door is never handed out: callers get a copy.
+public class RealDoorCache {
+
+    private final int maxEntries;
+    // Lookup -> door, owner or owners it returned, in access order. Null values are cached too,
+    // a missing door stays missing until something is inserted
+    private final LinkedHashMap<Key, Object> entries;
+    // doorUID -> keys of its entries, so a door is invalidated without scanning the cache
+    private final Long2ObjectOpenHashMap<List<Key>> keysByDoor;
+    // Bumped by every invalidation, a miss loaded across one is not cached
+    private long generation;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public RealDoorCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+        keysByDoor = new Long2ObjectOpenHashMap<>();
+        entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Object> eldest) {
+                if (size() <= RealDoorCache.this.maxEntries) {
+                    return false;
+                }
+                forget(eldest.getKey());
+                return true;
+            }
+        };
+    }
+
+    @Nullable
+    public Door getDoor(@Nullable UUID playerUUID, long doorUID, boolean includeNonOwners, Supplier<Door> loader) {
+        // The returned door carries the asking player's permission
+        var door = (Door) get(new Key(doorUID, Kind.DOOR, playerUUID, includeNonOwners), () -> {
+            var loaded = loader.get();
+            return loaded == null ? null : copy(loaded);
+        });
+        return door == null ? null : copy(door);
+    }
+
+    @Nullable
+    public DoorOwner getOwner(long doorUID, Supplier<DoorOwner> loader) {
+        return (DoorOwner) get(new Key(doorUID, Kind.OWNER, null, false), loader::get);
+    }
+
+    // Callers get their own copy of the list, BigDoors may modify it
+    @SuppressWarnings("unchecked")
+    public ArrayList<DoorOwner> getOwners(long doorUID, @Nullable UUID playerUUID, Supplier<ArrayList<DoorOwner>> loader) {
+        var owners = (List<DoorOwner>) get(new Key(doorUID, Kind.OWNERS, playerUUID, false), () -> List.copyOf(loader.get()));
+        return new ArrayList<>(owners);
+    }
+
+    public synchronized void invalidate(long doorUID) {
+        var keys = keysByDoor.remove(doorUID);
+        if (keys != null) {
+            keys.forEach(entries::remove);
+        }
+        generation++;
+    }
+
+    public synchronized void invalidateAll() {
+        entries.clear();
+        keysByDoor.clear();
+        generation++;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public void resetStats() {
+        hits.reset();
+        misses.reset();
+    }
+
+    // The cached value, what the loader returns is stored as is and must not be handed out
+    @Nullable
+    private Object get(Key key, Supplier<Object> loader) {
+        long loadGeneration;
+        synchronized (this) {
+            var value = entries.get(key);
+            if (value != null || entries.containsKey(key)) {
+                hits.increment();
+                return value;
+            }
+            loadGeneration = generation;
+        }
+        misses.increment();
+        var value = loader.get();
+        synchronized (this) {
+            if (generation == loadGeneration) {
+                if (!entries.containsKey(key)) {
+                    keysByDoor.computeIfAbsent(key.doorUID, doorUID -> new ArrayList<>(2)).add(key);
+                }
+                entries.put(key, value);
+            }
+        }
+        return value;
+    }
+
+    // Only called while holding the lock, by the eviction of an entry
+    private void forget(Key key) {
+        var keys = keysByDoor.get(key.doorUID);
+        if (keys != null && keys.remove(key) && keys.isEmpty()) {
+            keysByDoor.remove(key.doorUID);
+        }
+    }
+
+    private static Door copy(Door door) {
+        var copy = new Door(
+                door.getPlayerUUID(),
+                door.getPlayerName(),
+                door.getPrimeOwner(),
+                door.getWorld(),
+                door.getMinimum().clone(),
+                door.getMaximum().clone(),
+                door.getEngine().clone(),
+                door.getName(),
+                door.isOpen(),
+                door.getDoorUID(),
+                door.isLocked(),
+                door.getPermission(),
+                door.getType(),
+                door.getEngSide(),
+                door.getPowerBlockLoc().clone(),
+                door.getOpenDir(),
+                door.getAutoClose(),
+                door.notificationEnabled(),
+                door.bypassProtections()
+        );
+        copy.setBlocksToMove(door.getBlocksToMove());
+        return copy;
+    }
+
+    private enum Kind {
+        DOOR,
+        OWNER,
+        OWNERS
+    }
+
+    // Who's asking only matters for doors, they carry that player's permission, and for owners, filtered by player
+    private record Key(long doorUID, Kind kind, @Nullable UUID playerUUID, boolean includeNonOwners) {
+    }
+}
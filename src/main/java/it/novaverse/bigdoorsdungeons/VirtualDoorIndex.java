@@ -0,0 +1,1011 @@
+package it.novaverse.bigdoorsdungeons;
+
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.longs.Long2LongMap;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import nl.pim16aap2.bigDoors.Door;
+import nl.pim16aap2.bigDoors.util.DoorDirection;
+import nl.pim16aap2.bigDoors.util.RotateDirection;
+import nl.pim16aap2.bigDoors.util.Util;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.LongConsumer;
+import java.util.function.LongPredicate;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+// Store of the virtual doors and their lookup indexes. Readers never lock, writers serialize on writeLock.
+// - A world's doors are published by swapping its slot, before the power block chunks pointing at them
+// - A door's state is one immutable DoorState, every change replaces it with a single write
+// - A moving door joins the sections it enters before its state is swapped and leaves the others after
+// - uid = -(generation << (SLOT_BITS + INDEX_BITS) | slot << INDEX_BITS | index) - 1, a slot's generation moves on when it's handed back
+public class VirtualDoorIndex {
+
+    public static final UUID OWNER_UUID = UUID.fromString("a8190a78-cf83-11ee-a506-0242ac120002");
+    public static final String OWNER_NAME = "BigDoorsDungeons";
+
+    private static final int INDEX_BITS = 16;
+    private static final int SLOT_BITS = 24;
+    private static final int GENERATION_BITS = 63 - SLOT_BITS - INDEX_BITS;
+    public static final int MAX_DOORS_PER_WORLD = 1 << INDEX_BITS;
+    private static final int MAX_SLOTS = 1 << SLOT_BITS;
+    private static final long[] NO_UIDS = new long[0];
+
+    private final Object writeLock = new Object();
+    // slot -> doors of the world owning it. Only replaced to grow, entries are swapped one world at a time
+    private volatile AtomicReferenceArray<WorldDoors> slots = new AtomicReferenceArray<>(0);
+    private final Map<UUID, WorldDoors> doorsByWorld = new ConcurrentHashMap<>();
+    // Name as BigDoors shows it -> UIDs of the doors with that name in slot order. Arrays are replaced, never written
+    private final Map<String, long[]> uidsByName = new ConcurrentHashMap<>();
+    // chunkHash -> locationHash -> doorUID, same layout BigDoors uses for its PBCache. Chunks are replaced, never written
+    private final Map<Long, ChunkPowerBlocks> powerBlocks = new ConcurrentHashMap<>();
+    private volatile int size;
+    // Last version stamped on a world's doors, only touched while holding writeLock
+    private long lastVersion;
+
+    // Slot allocation, only touched while holding writeLock
+    private final BitSet usedSlots = new BitSet();
+    private final Map<UUID, Allocation> allocations = new HashMap<>();
+    // slot -> generation of the UIDs it hands out next
+    private int[] generations = new int[0];
+
+    public static long toDoorUID(int generation, int slot, int index) {
+        return -(((long) generation << (SLOT_BITS + INDEX_BITS)) | ((long) slot << INDEX_BITS) | index) - 1;
+    }
+
+    public static int generationOf(long doorUID) {
+        return (int) ((-(doorUID + 1)) >>> (SLOT_BITS + INDEX_BITS));
+    }
+
+    public static int slotOf(long doorUID) {
+        return (int) ((-(doorUID + 1)) >>> INDEX_BITS) & (MAX_SLOTS - 1);
+    }
+
+    public static int indexOf(long doorUID) {
+        return (int) ((-(doorUID + 1)) & (MAX_DOORS_PER_WORLD - 1));
+    }
+
+    // Same packing Minecraft uses for section positions: 22 bits of x and z, 20 of y
+    private static long sectionKey(int sectionX, int sectionY, int sectionZ) {
+        return ((long) sectionX & 0x3FFFFF) << 42 | ((long) sectionZ & 0x3FFFFF) << 20 | ((long) sectionY & 0xFFFFF);
+    }
+
+    // Readers
+
+    public boolean contains(long doorUID) {
+        return worldDoors(doorUID) != null;
+    }
+
+    @Nullable
+    public Door get(long doorUID) {
+        var worldDoors = worldDoors(doorUID);
+        return worldDoors == null ? null : worldDoors.materialize(indexOf(doorUID));
+    }
+
+    @Nullable
+    public World getWorld(long doorUID) {
+        var worldDoors = worldDoors(doorUID);
+        return worldDoors == null ? null : worldDoors.world;
+    }
+
+    // Name of the door as BigDoors shows it
+    @Nullable
+    public String getName(long doorUID) {
+        var worldDoors = worldDoors(doorUID);
+        return worldDoors == null ? null : worldDoors.name(indexOf(doorUID));
+    }
+
+    // Name of the door's template, the same in every instance of the dungeon
+    @Nullable
+    public String getBaseName(long doorUID) {
+        var worldDoors = worldDoors(doorUID);
+        return worldDoors == null ? null : worldDoors.templates[indexOf(doorUID)].name();
+    }
+
+    @Nullable
+    public Door getByName(UUID worldUID, String baseName) {
+        var worldDoors = doorsByWorld.get(worldUID);
+        if (worldDoors == null) {
+            return null;
+        }
+        var index = worldDoors.indexByBaseName.get(baseName);
+        return index == null ? null : worldDoors.materialize(index);
+    }
+
+    // 0 if the world has no such door, virtual UIDs are always negative
+    public long getUIDByName(UUID worldUID, String baseName) {
+        var worldDoors = doorsByWorld.get(worldUID);
+        if (worldDoors == null) {
+            return 0;
+        }
+        var index = worldDoors.indexByBaseName.get(baseName);
+        return index == null ? 0 : worldDoors.doorUID(index);
+    }
+
+    // Doors named exactly like this as BigDoors shows them, doors of different worlds may share a name
+    public List<Door> getByName(String name) {
+        var doorUIDs = uidsByName.getOrDefault(name, NO_UIDS);
+        var doors = new ArrayList<Door>(doorUIDs.length);
+        for (var doorUID : doorUIDs) {
+            var door = get(doorUID);
+            if (door != null) {
+                doors.add(door);
+            }
+        }
+        return doors;
+    }
+
+    // A page of doors in a stable order, world by world, optionally only those of a dungeon, a world or with a name, and accepted by the filter.
+    // Whole worlds are skipped by their door count when there's no filter, so a page costs about its size, not the total.
+    public List<Door> getPage(@Nullable String dungeonName, @Nullable UUID worldUID, @Nullable String name, @Nullable LongPredicate filter, long skip, int limit) {
+        var slots = this.slots;
+        var doors = new ArrayList<Door>(Math.min(limit, 64));
+        if (limit <= 0) {
+            return doors;
+        }
+        if (name != null) {
+            for (var doorUID : uidsByName.getOrDefault(name, NO_UIDS)) {
+                var worldDoors = worldDoors(doorUID);
+                if (worldDoors == null || !worldDoors.matches(dungeonName, worldUID) || (filter != null && !filter.test(doorUID))) {
+                    continue;
+                }
+                if (skip > 0) {
+                    skip--;
+                    continue;
+                }
+                doors.add(worldDoors.materialize(indexOf(doorUID)));
+                if (doors.size() == limit) {
+                    return doors;
+                }
+            }
+            return doors;
+        }
+        for (var slot = 0; slot < slots.length(); slot++) {
+            var worldDoors = slots.get(slot);
+            if (worldDoors == null || !worldDoors.matches(dungeonName, worldUID)) {
+                continue;
+            }
+            if (filter == null && skip >= worldDoors.size) {
+                skip -= worldDoors.size;
+                continue;
+            }
+            for (var index = worldDoors.skipEmpty(0); index < worldDoors.templates.length; index = worldDoors.skipEmpty(index + 1)) {
+                if (filter != null && !filter.test(worldDoors.doorUID(index))) {
+                    continue;
+                }
+                if (skip > 0) {
+                    skip--;
+                    continue;
+                }
+                doors.add(worldDoors.materialize(index));
+                if (doors.size() == limit) {
+                    return doors;
+                }
+            }
+        }
+        return doors;
+    }
+
+    // Every virtual door stored at the time of the call
+    public Collection<Door> getAll() {
+        var slots = this.slots;
+        var worlds = new WorldDoors[slots.length()];
+        var size = 0;
+        for (var slot = 0; slot < worlds.length; slot++) {
+            worlds[slot] = slots.get(slot);
+            size += worlds[slot] == null ? 0 : worlds[slot].size;
+        }
+        return new AllDoors(worlds, size);
+    }
+
+    public Collection<Door> getInWorld(UUID worldUID) {
+        var worldDoors = doorsByWorld.get(worldUID);
+        if (worldDoors == null) {
+            return List.of();
+        }
+        return worldDoors.view();
+    }
+
+    public int size(UUID worldUID) {
+        var worldDoors = doorsByWorld.get(worldUID);
+        return worldDoors == null ? 0 : worldDoors.size;
+    }
+
+    // Chunks holding the power blocks of a world's doors
+    public LongSet getPowerBlockChunks(UUID worldUID) {
+        var worldDoors = doorsByWorld.get(worldUID);
+        var chunkHashes = new LongOpenHashSet();
+        if (worldDoors == null) {
+            return chunkHashes;
+        }
+        for (var index = 0; index < worldDoors.templates.length; index++) {
+            if (worldDoors.templates[index] != null) {
+                var state = worldDoors.states.get(index);
+                chunkHashes.add(Util.chunkHashFromLocation(state.powerX(), state.powerZ(), worldUID));
+            }
+        }
+        return chunkHashes;
+    }
+
+    // Doors whose bounding box holds the block, only the doors of the block's section are checked
+    public List<Door> getAt(UUID worldUID, int x, int y, int z) {
+        var worldDoors = doorsByWorld.get(worldUID);
+        if (worldDoors == null) {
+            return List.of();
+        }
+        var indexes = worldDoors.sections.get(sectionKey(x >> 4, y >> 4, z >> 4));
+        if (indexes == null) {
+            return List.of();
+        }
+        var doors = new ArrayList<Door>(1);
+        for (var index : indexes) {
+            if (worldDoors.intersects(index, x, y, z, x, y, z)) {
+                doors.add(worldDoors.materialize(index));
+            }
+        }
+        return doors;
+    }
+
+    // Doors whose bounding box intersects the box, bounds included
+    public List<Door> getIntersecting(UUID worldUID, int xMin, int yMin, int zMin, int xMax, int yMax, int zMax) {
+        var worldDoors = doorsByWorld.get(worldUID);
+        if (worldDoors == null) {
+            return List.of();
+        }
+        var doors = new ArrayList<Door>();
+        var seen = new IntOpenHashSet();
+        for (var sectionX = xMin >> 4; sectionX <= xMax >> 4; sectionX++) {
+            for (var sectionY = yMin >> 4; sectionY <= yMax >> 4; sectionY++) {
+                for (var sectionZ = zMin >> 4; sectionZ <= zMax >> 4; sectionZ++) {
+                    var indexes = worldDoors.sections.get(sectionKey(sectionX, sectionY, sectionZ));
+                    if (indexes == null) {
+                        continue;
+                    }
+                    for (var index : indexes) {
+                        if (worldDoors.intersects(index, xMin, yMin, zMin, xMax, yMax, zMax) && seen.add(index)) {
+                            doors.add(worldDoors.materialize(index));
+                        }
+                    }
+                }
+            }
+        }
+        return doors;
+    }
+
+    public List<Door> getInChunk(UUID worldUID, int chunkX, int chunkZ) {
+        var worldDoors = doorsByWorld.get(worldUID);
+        if (worldDoors == null) {
+            return List.of();
+        }
+        var world = worldDoors.world;
+        return getIntersecting(worldUID, chunkX << 4, world.getMinHeight(), chunkZ << 4, (chunkX << 4) + 15, world.getMaxHeight() - 1, (chunkZ << 4) + 15);
+    }
+
+    @Nullable
+    public ChunkPowerBlocks getPowerBlocks(long chunkHash) {
+        return powerBlocks.get(chunkHash);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Changes whenever doors are added to or removed from the world, lets callers cache lookups by name until then.
+    // 0 for a world without doors
+    public long getVersion(UUID worldUID) {
+        var worldDoors = doorsByWorld.get(worldUID);
+        return worldDoors == null ? 0 : worldDoors.version;
+    }
+
+    // Inconsistencies between the indexes, and doors or slots still held by unloaded worlds.
+    // Runs under the write lock, so the indexes are checked as a whole without a write landing halfway
+    public List<String> verify(Predicate<UUID> isWorldLoaded) {
+        var problems = new ArrayList<String>();
+        synchronized (writeLock) {
+            var slots = this.slots;
+            var worldTotal = 0;
+            for (var worldDoors : doorsByWorld.values()) {
+                worldTotal += worldDoors.size;
+                if (!isWorldLoaded.test(worldDoors.worldUID)) {
+                    problems.add(worldDoors.size + " doors left in unloaded world " + worldDoors.worldUID);
+                }
+                if (worldDoors.slot >= slots.length() || slots.get(worldDoors.slot) != worldDoors) {
+                    problems.add("Doors of world " + worldDoors.worldUID + " aren't reachable from slot " + worldDoors.slot);
+                }
+                for (var indexes : worldDoors.sections.values()) {
+                    for (var index : indexes) {
+                        if (index >= worldDoors.templates.length || worldDoors.templates[index] == null) {
+                            problems.add("World " + worldDoors.worldUID + " has a removed door left in its sections");
+                        }
+                    }
+                }
+                if (worldDoors.indexByBaseName.size() != worldDoors.size) {
+                    problems.add("World " + worldDoors.worldUID + " has " + worldDoors.size + " doors but only " + worldDoors.indexByBaseName.size() + " distinct base names");
+                }
+            }
+            var slotted = 0;
+            for (var slot = 0; slot < slots.length(); slot++) {
+                if (slots.get(slot) != null) {
+                    slotted++;
+                }
+            }
+            if (slotted != doorsByWorld.size()) {
+                problems.add(slotted + " slots in use for " + doorsByWorld.size() + " worlds");
+            }
+            if (worldTotal != size) {
+                problems.add("Worlds hold " + worldTotal + " doors but the index counts " + size);
+            }
+            var namedDoors = uidsByName.values().stream().mapToInt(doorUIDs -> doorUIDs.length).sum();
+            if (namedDoors != size) {
+                problems.add(namedDoors + " doors indexed by name, expected " + size);
+            }
+            var indexedPowerBlocks = powerBlocks.values().stream().mapToInt(chunk -> chunk.byLocation().size()).sum();
+            if (indexedPowerBlocks != size) {
+                problems.add(indexedPowerBlocks + " power blocks indexed, expected " + size);
+            }
+
+            allocations.forEach((worldUID, allocation) -> {
+                if (!isWorldLoaded.test(worldUID)) {
+                    problems.add("Slot " + allocation.slot + " still reserved by unloaded world " + worldUID);
+                }
+            });
+            if (usedSlots.cardinality() != allocations.size()) {
+                problems.add(usedSlots.cardinality() + " slots marked used for " + allocations.size() + " reservations");
+            }
+        }
+        return problems;
+    }
+
+    // Writers
+
+    // Reserves the UIDs of the next doors of a world and returns the first one, the others follow in decreasing order
+    public long reserve(UUID worldUID, int count) {
+        synchronized (writeLock) {
+            var allocation = allocations.get(worldUID);
+            if (allocation == null) {
+                // Lowest free slot, keeps UIDs small and the slot array dense
+                var slot = usedSlots.nextClearBit(0);
+                if (slot >= MAX_SLOTS) {
+                    throw new IllegalStateException("No more than " + MAX_SLOTS + " worlds can hold virtual doors at once");
+                }
+                usedSlots.set(slot);
+                if (slot >= generations.length) {
+                    generations = Arrays.copyOf(generations, Math.max(slot + 1, generations.length * 2));
+                }
+                allocation = new Allocation(generations[slot], slot);
+                allocations.put(worldUID, allocation);
+            }
+            if (allocation.nextIndex + count > MAX_DOORS_PER_WORLD) {
+                throw new IllegalStateException("A world can't hold more than " + MAX_DOORS_PER_WORLD + " virtual doors");
+            }
+            var firstDoorUID = toDoorUID(allocation.generation, allocation.slot, allocation.nextIndex);
+            allocation.nextIndex += count;
+            return firstDoorUID;
+        }
+    }
+
+    // Doors of a world are shown as their template name followed by the name suffix,
+    // the dungeon and the suffix are fixed by the first add
+    public void add(World world, String dungeonName, String nameSuffix, long doorUID, DoorTemplate template) {
+        addAll(world, dungeonName, nameSuffix, doorUID, List.of(template));
+    }
+
+    public void addAll(World world, String dungeonName, String nameSuffix, long firstDoorUID, List<DoorTemplate> templates) {
+        if (templates.isEmpty()) {
+            return;
+        }
+        synchronized (writeLock) {
+            // Sized once for the whole batch, instances are published in a single call
+            var minCapacity = indexOf(firstDoorUID) + templates.size();
+            var current = doorsByWorld.get(world.getUID());
+            var worldDoors = current == null
+                    ? new WorldDoors(generationOf(firstDoorUID), slotOf(firstDoorUID), world, dungeonName, nameSuffix, minCapacity)
+                    : current.copy(minCapacity);
+            var builder = new Builder(worldDoors);
+            var doorUID = firstDoorUID;
+            for (var template : templates) {
+                builder.add(doorUID--, template);
+            }
+            publish(builder);
+        }
+    }
+
+    @Nullable
+    public Door remove(long doorUID) {
+        synchronized (writeLock) {
+            var worldDoors = worldDoors(doorUID);
+            if (worldDoors == null) {
+                return null;
+            }
+            var index = indexOf(doorUID);
+            var door = worldDoors.materialize(index);
+            var builder = new Builder(worldDoors.copy(0));
+            builder.remove(index);
+            publish(builder);
+            return door;
+        }
+    }
+
+    public List<Door> removeWorld(UUID worldUID) {
+        synchronized (writeLock) {
+            var allocation = allocations.remove(worldUID);
+            if (allocation != null) {
+                usedSlots.clear(allocation.slot);
+                // UIDs of this world stop resolving once the slot is reused
+                generations[allocation.slot] = (allocation.generation + 1) & ((1 << GENERATION_BITS) - 1);
+            }
+            var worldDoors = doorsByWorld.get(worldUID);
+            if (worldDoors == null) {
+                return new ArrayList<>();
+            }
+            var removed = new ArrayList<>(worldDoors.view());
+            // Nothing to copy, the world's arrays are simply dropped once its power blocks are gone
+            var builder = new Builder(worldDoors);
+            for (var index = 0; index < worldDoors.templates.length; index++) {
+                if (worldDoors.templates[index] != null) {
+                    builder.removePowerBlock(index);
+                    builder.removeName(index);
+                }
+            }
+            builder.sizeChange -= worldDoors.size;
+            publishNames(builder);
+            publishChunks(builder);
+            setSlot(worldDoors.slot, null);
+            doorsByWorld.remove(worldUID);
+            size += builder.sizeChange;
+            return removed;
+        }
+    }
+
+    // Box, open state and engine side change with a single write, only the sections the door leaves and enters are updated.
+    // Names and membership don't change, so the world isn't republished and cached lookups stay valid
+    public boolean setCoords(long doorUID, boolean open, int xMin, int yMin, int zMin, int xMax, int yMax, int zMax, DoorDirection engSide) {
+        synchronized (writeLock) {
+            var worldDoors = worldDoors(doorUID);
+            if (worldDoors == null) {
+                return false;
+            }
+            var index = indexOf(doorUID);
+            worldDoors.move(index, worldDoors.states.get(index).withPlacement(open, Math.min(xMin, xMax), Math.min(yMin, yMax), Math.min(zMin, zMax),
+                    Math.max(xMin, xMax), Math.max(yMin, yMax), Math.max(zMin, zMax), engSide));
+            return true;
+        }
+    }
+
+    // The remaining state doesn't touch any index, the door's state is replaced and nothing else
+
+    public boolean setLocked(long doorUID, boolean locked) {
+        return update(doorUID, state -> state.withLocked(locked));
+    }
+
+    public boolean setNotificationEnabled(long doorUID, boolean notificationEnabled) {
+        return update(doorUID, state -> state.withNotificationEnabled(notificationEnabled));
+    }
+
+    public boolean setBypassProtections(long doorUID, boolean bypassProtections) {
+        return update(doorUID, state -> state.withBypassProtections(bypassProtections));
+    }
+
+    public boolean setOpenDir(long doorUID, RotateDirection openDir) {
+        return update(doorUID, state -> state.withOpenDir(openDir));
+    }
+
+    public boolean setAutoClose(long doorUID, int autoClose) {
+        return update(doorUID, state -> state.withAutoClose(autoClose));
+    }
+
+    public boolean setBlocksToMove(long doorUID, int blocksToMove) {
+        return update(doorUID, state -> state.withBlocksToMove(blocksToMove));
+    }
+
+    // Unlike the other state, the power block is indexed, so moving it replaces the chunks it leaves and enters
+    public boolean setPowerBlock(long doorUID, int x, int y, int z) {
+        synchronized (writeLock) {
+            var worldDoors = worldDoors(doorUID);
+            if (worldDoors == null) {
+                return false;
+            }
+            var index = indexOf(doorUID);
+            var builder = new Builder(worldDoors);
+            builder.removePowerBlock(index);
+            worldDoors.states.set(index, worldDoors.states.get(index).withPowerBlock(x, y, z));
+            builder.addPowerBlock(index);
+            publishChunks(builder);
+            return true;
+        }
+    }
+
+    private boolean update(long doorUID, UnaryOperator<DoorState> change) {
+        synchronized (writeLock) {
+            var worldDoors = worldDoors(doorUID);
+            if (worldDoors == null) {
+                return false;
+            }
+            var index = indexOf(doorUID);
+            worldDoors.states.set(index, change.apply(worldDoors.states.get(index)));
+            return true;
+        }
+    }
+
+    // The world goes first, a reader finding a new power block can always resolve its door
+    private void publish(Builder builder) {
+        var worldDoors = builder.worldDoors;
+        if (worldDoors.size == 0) {
+            setSlot(worldDoors.slot, null);
+            doorsByWorld.remove(worldDoors.worldUID);
+        } else {
+            worldDoors.version = ++lastVersion;
+            setSlot(worldDoors.slot, worldDoors);
+            doorsByWorld.put(worldDoors.worldUID, worldDoors);
+        }
+        publishNames(builder);
+        publishChunks(builder);
+        size += builder.sizeChange;
+    }
+
+    private void publishNames(Builder builder) {
+        for (var i = 0; i < builder.removedNames.size(); i++) {
+            var name = builder.removedNames.get(i);
+            var doorUID = builder.removedNameUIDs.getLong(i);
+            var doorUIDs = uidsByName.getOrDefault(name, NO_UIDS);
+            var remaining = Arrays.stream(doorUIDs).filter(current -> current != doorUID).toArray();
+            if (remaining.length == 0) {
+                uidsByName.remove(name);
+            } else if (remaining.length != doorUIDs.length) {
+                uidsByName.put(name, remaining);
+            }
+        }
+        for (var i = 0; i < builder.addedNames.size(); i++) {
+            var name = builder.addedNames.get(i);
+            var doorUID = builder.addedNameUIDs.getLong(i);
+            var doorUIDs = uidsByName.getOrDefault(name, NO_UIDS);
+            // Slot order, so pages by name list worlds in the same order as every other page
+            var position = 0;
+            while (position < doorUIDs.length && slotOf(doorUIDs[position]) < slotOf(doorUID)) {
+                position++;
+            }
+            var grown = new long[doorUIDs.length + 1];
+            System.arraycopy(doorUIDs, 0, grown, 0, position);
+            grown[position] = doorUID;
+            System.arraycopy(doorUIDs, position, grown, position + 1, doorUIDs.length - position);
+            uidsByName.put(name, grown);
+        }
+    }
+
+    private void publishChunks(Builder builder) {
+        for (var entry : builder.copiedChunks.long2ObjectEntrySet()) {
+            var chunk = entry.getValue();
+            if (chunk.isEmpty()) {
+                powerBlocks.remove(entry.getLongKey());
+            } else {
+                // Boxed copy built once here, so getPowerBlockData can hand it out without allocating
+                powerBlocks.put(entry.getLongKey(), new ChunkPowerBlocks(chunk, new HashMap<>(chunk)));
+            }
+        }
+    }
+
+    private void setSlot(int slot, @Nullable WorldDoors worldDoors) {
+        var slots = this.slots;
+        if (slot < slots.length()) {
+            slots.set(slot, worldDoors);
+            return;
+        }
+        if (worldDoors == null) {
+            return;
+        }
+        var grown = new AtomicReferenceArray<WorldDoors>(Math.max(slot + 1, slots.length() * 2));
+        for (var i = 0; i < slots.length(); i++) {
+            grown.set(i, slots.get(i));
+        }
+        grown.set(slot, worldDoors);
+        this.slots = grown;
+    }
+
+    // The doors of the world holding this UID, null if no door has it
+    @Nullable
+    private WorldDoors worldDoors(long doorUID) {
+        if (doorUID >= 0) {
+            return null;
+        }
+        var slots = this.slots;
+        var slot = slotOf(doorUID);
+        if (slot >= slots.length()) {
+            return null;
+        }
+        var worldDoors = slots.get(slot);
+        return worldDoors != null && worldDoors.holds(doorUID) ? worldDoors : null;
+    }
+
+    public record ChunkPowerBlocks(Long2LongMap byLocation, HashMap<Long, Long> boxed) {
+    }
+
+    // Everything BigDoors changes about a door, replaced as a whole so a reader never sees half a change
+    private record DoorState(boolean open, int xMin, int yMin, int zMin, int xMax, int yMax, int zMax, DoorDirection engSide,
+                             int powerX, int powerY, int powerZ, boolean locked, boolean notificationEnabled,
+                             boolean bypassProtections, RotateDirection openDir, int autoClose, int blocksToMove) {
+
+        private static DoorState of(DoorTemplate template) {
+            var min = template.min();
+            var max = template.max();
+            var powerBlock = template.powerBlock();
+            return new DoorState(template.open(), min.getBlockX(), min.getBlockY(), min.getBlockZ(), max.getBlockX(), max.getBlockY(), max.getBlockZ(),
+                    template.engSide(), powerBlock.getBlockX(), powerBlock.getBlockY(), powerBlock.getBlockZ(), template.locked(),
+                    template.notificationEnabled(), template.bypassProtections(), template.openDir(), template.autoClose(), template.blocksToMove());
+        }
+
+        private DoorState withPlacement(boolean open, int xMin, int yMin, int zMin, int xMax, int yMax, int zMax, DoorDirection engSide) {
+            return new DoorState(open, xMin, yMin, zMin, xMax, yMax, zMax, engSide, powerX, powerY, powerZ, locked, notificationEnabled, bypassProtections, openDir, autoClose, blocksToMove);
+        }
+
+        private DoorState withPowerBlock(int powerX, int powerY, int powerZ) {
+            return new DoorState(open, xMin, yMin, zMin, xMax, yMax, zMax, engSide, powerX, powerY, powerZ, locked, notificationEnabled, bypassProtections, openDir, autoClose, blocksToMove);
+        }
+
+        private DoorState withLocked(boolean locked) {
+            return new DoorState(open, xMin, yMin, zMin, xMax, yMax, zMax, engSide, powerX, powerY, powerZ, locked, notificationEnabled, bypassProtections, openDir, autoClose, blocksToMove);
+        }
+
+        private DoorState withNotificationEnabled(boolean notificationEnabled) {
+            return new DoorState(open, xMin, yMin, zMin, xMax, yMax, zMax, engSide, powerX, powerY, powerZ, locked, notificationEnabled, bypassProtections, openDir, autoClose, blocksToMove);
+        }
+
+        private DoorState withBypassProtections(boolean bypassProtections) {
+            return new DoorState(open, xMin, yMin, zMin, xMax, yMax, zMax, engSide, powerX, powerY, powerZ, locked, notificationEnabled, bypassProtections, openDir, autoClose, blocksToMove);
+        }
+
+        private DoorState withOpenDir(RotateDirection openDir) {
+            return new DoorState(open, xMin, yMin, zMin, xMax, yMax, zMax, engSide, powerX, powerY, powerZ, locked, notificationEnabled, bypassProtections, openDir, autoClose, blocksToMove);
+        }
+
+        private DoorState withAutoClose(int autoClose) {
+            return new DoorState(open, xMin, yMin, zMin, xMax, yMax, zMax, engSide, powerX, powerY, powerZ, locked, notificationEnabled, bypassProtections, openDir, autoClose, blocksToMove);
+        }
+
+        private DoorState withBlocksToMove(int blocksToMove) {
+            return new DoorState(open, xMin, yMin, zMin, xMax, yMax, zMax, engSide, powerX, powerY, powerZ, locked, notificationEnabled, bypassProtections, openDir, autoClose, blocksToMove);
+        }
+
+        private boolean intersects(int xMin, int yMin, int zMin, int xMax, int yMax, int zMax) {
+            return this.xMin <= xMax && this.xMax >= xMin && this.yMin <= yMax && this.yMax >= yMin && this.zMin <= zMax && this.zMax >= zMin;
+        }
+    }
+
+    private static final class Allocation {
+
+        private final int generation;
+        private final int slot;
+        private int nextIndex;
+
+        private Allocation(int generation, int slot) {
+            this.generation = generation;
+            this.slot = slot;
+        }
+    }
+
+    // Doors of a single world, a door's index in the slot block is its index in every array
+    private static final class WorldDoors {
+
+        private final int generation;
+        private final int slot;
+        private final UUID worldUID;
+        private final World world;
+        private final String dungeonName;
+        private final String nameSuffix;
+
+        // Shared with the other instances of the dungeon, null where no door is stored
+        private DoorTemplate[] templates;
+        // Read once per lookup, every change swaps the door's entry
+        private AtomicReferenceArray<DoorState> states;
+
+        private Map<String, Integer> indexByBaseName;
+        // Section key -> indexes of the doors whose bounding box reaches into it
+        // Concurrent, so a moving door updates the sections it leaves and enters in place while readers use them
+        private Map<Long, int[]> sections;
+        private int size;
+        // Stamped when published, the world's doors are never added or removed in place
+        private long version;
+
+        private WorldDoors(int generation, int slot, World world, String dungeonName, String nameSuffix, int capacity) {
+            this.generation = generation;
+            this.slot = slot;
+            this.worldUID = world.getUID();
+            this.world = world;
+            this.dungeonName = dungeonName;
+            this.nameSuffix = nameSuffix;
+            templates = new DoorTemplate[capacity];
+            states = new AtomicReferenceArray<>(capacity);
+            indexByBaseName = new HashMap<>();
+            sections = new ConcurrentHashMap<>();
+        }
+
+        // Copy holding at least minCapacity doors, grown geometrically since edit-mode inserts add doors one at a time
+        private WorldDoors copy(int minCapacity) {
+            var capacity = templates.length < minCapacity ? Math.max(minCapacity, templates.length * 2) : templates.length;
+            var copy = new WorldDoors(generation, slot, world, dungeonName, nameSuffix, 0);
+            copy.templates = Arrays.copyOf(templates, capacity);
+            copy.states = new AtomicReferenceArray<>(capacity);
+            for (var index = 0; index < states.length(); index++) {
+                copy.states.set(index, states.get(index));
+            }
+            copy.indexByBaseName = new HashMap<>(indexByBaseName);
+            copy.sections = new ConcurrentHashMap<>(sections); // Index arrays are replaced, never written
+            copy.size = size;
+            return copy;
+        }
+
+        private void set(int index, DoorTemplate template) {
+            templates[index] = template;
+            states.set(index, DoorState.of(template));
+        }
+
+        private void addSections(int index) {
+            forEachSection(states.get(index), null, key -> addSection(key, index));
+        }
+
+        private void removeSections(int index) {
+            forEachSection(states.get(index), null, key -> removeSection(key, index));
+        }
+
+        // The door is listed in the sections it enters before its state is swapped and dropped from the ones it
+        // leaves after, the sections it stays in list it throughout
+        private void move(int index, DoorState to) {
+            var from = states.get(index);
+            forEachSection(to, from, key -> addSection(key, index));
+            states.set(index, to);
+            forEachSection(from, to, key -> removeSection(key, index));
+        }
+
+        private void addSection(long key, int index) {
+            var indexes = sections.get(key);
+            if (indexes == null) {
+                sections.put(key, new int[]{index});
+            } else {
+                var grown = Arrays.copyOf(indexes, indexes.length + 1);
+                grown[indexes.length] = index;
+                sections.put(key, grown);
+            }
+        }
+
+        private void removeSection(long key, int index) {
+            var indexes = sections.get(key);
+            if (indexes == null) {
+                return;
+            }
+            var remaining = Arrays.stream(indexes).filter(current -> current != index).toArray();
+            if (remaining.length == 0) {
+                sections.remove(key);
+            } else {
+                sections.put(key, remaining);
+            }
+        }
+
+        // Sections reached by the door's box, except those also reached by the other box
+        private static void forEachSection(DoorState bounds, @Nullable DoorState except, LongConsumer action) {
+            for (var sectionX = bounds.xMin() >> 4; sectionX <= bounds.xMax() >> 4; sectionX++) {
+                for (var sectionY = bounds.yMin() >> 4; sectionY <= bounds.yMax() >> 4; sectionY++) {
+                    for (var sectionZ = bounds.zMin() >> 4; sectionZ <= bounds.zMax() >> 4; sectionZ++) {
+                        if (except != null
+                                && sectionX >= except.xMin() >> 4 && sectionX <= except.xMax() >> 4
+                                && sectionY >= except.yMin() >> 4 && sectionY <= except.yMax() >> 4
+                                && sectionZ >= except.zMin() >> 4 && sectionZ <= except.zMax() >> 4) {
+                            continue;
+                        }
+                        action.accept(sectionKey(sectionX, sectionY, sectionZ));
+                    }
+                }
+            }
+        }
+
+        private boolean matches(@Nullable String dungeonName, @Nullable UUID worldUID) {
+            return (dungeonName == null || this.dungeonName.equalsIgnoreCase(dungeonName)) && (worldUID == null || this.worldUID.equals(worldUID));
+        }
+
+        private boolean intersects(int index, int xMin, int yMin, int zMin, int xMax, int yMax, int zMax) {
+            return states.get(index).intersects(xMin, yMin, zMin, xMax, yMax, zMax);
+        }
+
+        private long doorUID(int index) {
+            return toDoorUID(generation, slot, index);
+        }
+
+        // Whether the UID is one of this world's and a door is stored under it
+        private boolean holds(long doorUID) {
+            var index = indexOf(doorUID);
+            return generationOf(doorUID) == generation && index < templates.length && templates[index] != null;
+        }
+
+        private String name(int index) {
+            return templates[index].name() + nameSuffix;
+        }
+
+        private Door materialize(int index) {
+            var template = templates[index];
+            var state = states.get(index);
+            var door = new Door(
+                    OWNER_UUID,
+                    OWNER_NAME,
+                    OWNER_UUID,
+                    world,
+                    new Location(world, state.xMin(), state.yMin(), state.zMin()),
+                    new Location(world, state.xMax(), state.yMax(), state.zMax()),
+                    template.engineLocation(world),
+                    name(index),
+                    state.open(),
+                    doorUID(index),
+                    state.locked(),
+                    0,
+                    template.type(),
+                    state.engSide(),
+                    new Location(world, state.powerX(), state.powerY(), state.powerZ()),
+                    state.openDir(),
+                    state.autoClose(),
+                    state.notificationEnabled(),
+                    state.bypassProtections()
+            );
+            door.setBlocksToMove(state.blocksToMove());
+            return door;
+        }
+
+        private Collection<Door> view() {
+            return new AbstractCollection<>() {
+                @Override
+                public Iterator<Door> iterator() {
+                    return new Iterator<>() {
+                        private int next = skipEmpty(0);
+
+                        @Override
+                        public boolean hasNext() {
+                            return next < templates.length;
+                        }
+
+                        @Override
+                        public Door next() {
+                            if (next >= templates.length) {
+                                throw new NoSuchElementException();
+                            }
+                            var door = materialize(next);
+                            next = skipEmpty(next + 1);
+                            return door;
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
+        }
+
+        private int skipEmpty(int index) {
+            while (index < templates.length && templates[index] == null) {
+                index++;
+            }
+            return index;
+        }
+    }
+
+    // Every virtual door of the worlds stored when it was created, membership is a lookup by UID
+    private static final class AllDoors extends AbstractCollection<Door> {
+
+        // Indexed by slot
+        private final WorldDoors[] worlds;
+        private final int size;
+
+        private AllDoors(WorldDoors[] worlds, int size) {
+            this.worlds = worlds;
+            this.size = size;
+        }
+
+        @Override
+        public Iterator<Door> iterator() {
+            return Arrays.stream(worlds)
+                    .filter(Objects::nonNull)
+                    .flatMap(worldDoors -> worldDoors.view().stream())
+                    .iterator();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Door door) || door.getDoorUID() >= 0) {
+                return false;
+            }
+            var slot = slotOf(door.getDoorUID());
+            var worldDoors = slot < worlds.length ? worlds[slot] : null;
+            return worldDoors != null && worldDoors.holds(door.getDoorUID());
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    // Changes to the doors of one world. The world is a private copy, or the live one when only its power blocks move,
+    // and every power block chunk touched is copied once and published together with it, like the names added and removed
+    private class Builder {
+
+        private final WorldDoors worldDoors;
+        private final Long2ObjectOpenHashMap<Long2LongOpenHashMap> copiedChunks = new Long2ObjectOpenHashMap<>();
+        private final List<String> addedNames = new ArrayList<>();
+        private final LongArrayList addedNameUIDs = new LongArrayList();
+        private final List<String> removedNames = new ArrayList<>();
+        private final LongArrayList removedNameUIDs = new LongArrayList();
+        private int sizeChange;
+
+        private Builder(WorldDoors worldDoors) {
+            this.worldDoors = worldDoors;
+        }
+
+        private void add(long doorUID, DoorTemplate template) {
+            var index = indexOf(doorUID);
+            if (worldDoors.templates[index] != null) {
+                remove(index);
+            }
+            worldDoors.set(index, template);
+            worldDoors.indexByBaseName.put(template.name(), index);
+            worldDoors.size++;
+            sizeChange++;
+            addedNames.add(worldDoors.name(index));
+            addedNameUIDs.add(doorUID);
+            addPowerBlock(index);
+            worldDoors.addSections(index);
+        }
+
+        private void remove(int index) {
+            if (index >= worldDoors.templates.length || worldDoors.templates[index] == null) {
+                return;
+            }
+            removePowerBlock(index);
+            removeName(index);
+            worldDoors.removeSections(index);
+            worldDoors.indexByBaseName.remove(worldDoors.templates[index].name(), index);
+            worldDoors.templates[index] = null;
+            worldDoors.size--;
+            sizeChange--;
+        }
+
+        private void removeName(int index) {
+            removedNames.add(worldDoors.name(index));
+            removedNameUIDs.add(worldDoors.doorUID(index));
+        }
+
+        private void addPowerBlock(int index) {
+            var state = worldDoors.states.get(index);
+            var x = state.powerX();
+            var y = state.powerY();
+            var z = state.powerZ();
+            var chunkHash = Util.chunkHashFromLocation(x, z, worldDoors.worldUID);
+            chunkPowerBlocks(chunkHash).put(Util.locationHash(x, y, z, worldDoors.worldUID), worldDoors.doorUID(index));
+        }
+
+        private void removePowerBlock(int index) {
+            var state = worldDoors.states.get(index);
+            var x = state.powerX();
+            var y = state.powerY();
+            var z = state.powerZ();
+            var chunkHash = Util.chunkHashFromLocation(x, z, worldDoors.worldUID);
+            chunkPowerBlocks(chunkHash).remove(Util.locationHash(x, y, z, worldDoors.worldUID), worldDoors.doorUID(index));
+        }
+
+        // The chunk's power blocks, copied from the published ones the first time this builder touches them
+        private Long2LongOpenHashMap chunkPowerBlocks(long chunkHash) {
+            var chunk = copiedChunks.get(chunkHash);
+            if (chunk == null) {
+                var current = powerBlocks.get(chunkHash);
+                chunk = current == null ? new Long2LongOpenHashMap() : new Long2LongOpenHashMap(current.byLocation());
+                copiedChunks.put(chunkHash, chunk);
+            }
+            return chunk;
+        }
+    }
+}
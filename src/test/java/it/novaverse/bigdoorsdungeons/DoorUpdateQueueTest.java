@@ -0,0 +1,108 @@
+package it.novaverse.bigdoorsdungeons;
+
+import it.novaverse.bigdoorsdungeons.DoorUpdateQueue.Coords;
+import it.novaverse.bigdoorsdungeons.DoorUpdateQueue.PendingUpdate;
+import nl.pim16aap2.bigDoors.util.DoorDirection;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DoorUpdateQueueTest {
+
+    @Test
+    void flushWritesEveryDoorInOneBatch() {
+        var batches = new ArrayList<Map<Long, PendingUpdate>>();
+        var queue = new DoorUpdateQueue(batches::add, new DoorStats(), LoggerFactory.getLogger(DoorUpdateQueueTest.class));
+        queue.enqueue(1, PendingUpdate.blocksToMove(4));
+        queue.enqueue(1, PendingUpdate.locked(true));
+        queue.enqueue(1, PendingUpdate.blocksToMove(6));
+        queue.enqueue(2, PendingUpdate.autoClose(20));
+
+        var update = queue.get(1);
+        assertEquals(6, update.blocksToMove());
+        assertEquals(true, update.locked());
+        assertNull(update.autoClose());
+
+        var flushSequence = queue.getFlushSequence();
+        queue.flush();
+        assertEquals(1, batches.size());
+        assertEquals(2, batches.get(0).size());
+        assertTrue(queue.isEmpty());
+        assertEquals(flushSequence + 2, queue.getFlushSequence());
+
+        // Nothing queued, nothing written
+        queue.flush();
+        assertEquals(1, batches.size());
+    }
+
+    @Test
+    void failedFlushKeepsUpdatesQueued() {
+        var failing = new boolean[]{true};
+        var written = new ArrayList<Map<Long, PendingUpdate>>();
+        var queue = new DoorUpdateQueue(updates -> {
+            if (failing[0]) {
+                throw new SQLException("database is locked");
+            }
+            written.add(updates);
+        }, new DoorStats(), LoggerFactory.getLogger(DoorUpdateQueueTest.class));
+        queue.enqueue(1, PendingUpdate.blocksToMove(4));
+
+        queue.flush();
+        assertEquals(1, queue.size());
+
+        failing[0] = false;
+        queue.flush();
+        assertTrue(queue.isEmpty());
+        assertEquals(4, written.get(0).get(1L).blocksToMove());
+    }
+
+    // An update merged while its door was being written is written by the next flush
+    @Test
+    void updateQueuedDuringFlushStaysQueued() {
+        var queueHolder = new DoorUpdateQueue[1];
+        var queue = new DoorUpdateQueue(updates -> {
+            if (updates.get(1L).locked() == null) {
+                queueHolder[0].enqueue(1, PendingUpdate.locked(true));
+            }
+        }, new DoorStats(), LoggerFactory.getLogger(DoorUpdateQueueTest.class));
+        queueHolder[0] = queue;
+        queue.enqueue(1, PendingUpdate.blocksToMove(4));
+
+        queue.flush();
+        assertEquals(true, queue.get(1).locked());
+        queue.flush();
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    void discardDropsTheDoor() {
+        var queue = new DoorUpdateQueue(updates -> fail("Nothing to write"), new DoorStats(), LoggerFactory.getLogger(DoorUpdateQueueTest.class));
+        queue.enqueue(1, PendingUpdate.blocksToMove(4));
+        queue.discard(1);
+        queue.flush();
+        assertNull(queue.get(1));
+    }
+
+    @Test
+    void appliedUpdateLeavesTheReadDoorAlone() {
+        var world = TestDoors.world("world");
+        var door = TestDoors.realDoor(world, 7, UUID.randomUUID());
+        var update = new PendingUpdate(8, new Coords(true, 10, 64, 10, 12, 66, 10, DoorDirection.EAST), null, null, null, null, true);
+
+        var updated = update.applyTo(door);
+        assertEquals(8, updated.getBlocksToMove());
+        assertTrue(updated.isOpen());
+        assertTrue(updated.isLocked());
+        assertEquals(10, updated.getMinimum().getBlockX());
+        assertEquals(DoorDirection.EAST, updated.getEngSide());
+        assertEquals(door.getAutoClose(), updated.getAutoClose());
+        assertEquals(List.of(0, false, false), List.of(door.getMinimum().getBlockX(), door.isOpen(), door.isLocked()));
+    }
+}
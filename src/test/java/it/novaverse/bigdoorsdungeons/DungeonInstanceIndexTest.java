@@ -0,0 +1,47 @@
+package it.novaverse.bigdoorsdungeons;
+
+import org.bukkit.World;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DungeonInstanceIndexTest {
+
+    // Stand-in for the MythicDungeons instance registry
+    private final HashMap<World, TestInstance> registry = new HashMap<>();
+    private final DungeonInstanceIndex<TestInstance> instances = new DungeonInstanceIndex<>(registry::get, TestInstance::world);
+
+    @Test
+    void lateInstanceIsFoundAfterMisses() {
+        var world = TestDoors.world("dungeon_1");
+        instances.markLoading(world);
+        assertNull(instances.get(world));
+        assertNull(instances.resolve(world));
+        assertNull(instances.resolve(world));
+
+        var instance = new TestInstance(world);
+        registry.put(world, instance);
+        assertSame(instance, instances.resolve(world));
+        assertSame(instance, instances.get(world));
+        assertEquals(1, instances.size());
+    }
+
+    @Test
+    void plainWorldIsRemembered() {
+        var world = TestDoors.world("world");
+        assertNull(instances.get(world));
+        // Only a world marked as loading is looked up again
+        registry.put(world, new TestInstance(world));
+        assertNull(instances.get(world));
+
+        instances.remove(world);
+        assertEquals(List.of(), instances.verify(worldUID -> false));
+    }
+
+    // Stand-in for a MythicDungeons instance
+    private record TestInstance(World world) {
+    }
+}
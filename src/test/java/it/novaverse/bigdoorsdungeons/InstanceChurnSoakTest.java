@@ -0,0 +1,200 @@
+package it.novaverse.bigdoorsdungeons;
+
+import nl.pim16aap2.bigDoors.util.DoorDirection;
+import org.bukkit.World;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Instances loading, played and unloading thousands of times while door commands run from other threads.
+// Once the last instance is gone every index has to be empty. Left out of the default build, run with
+// mvn test -Psoak [-Dsoak.cycles=...]. Heap growth and per-cycle latency are reported as test entries
+@Tag("soak")
+class InstanceChurnSoakTest {
+
+    private static final int CYCLES = Integer.getInteger("soak.cycles", 2000);
+    private static final int LIFECYCLE_THREADS = 4;
+    private static final int COMMAND_THREADS = 4;
+    private static final int WARMUP_CYCLES = 100;
+
+    private final VirtualDoorIndex doors = new VirtualDoorIndex();
+    // Stand-in for the MythicDungeons instance registry
+    private final ConcurrentHashMap<World, TestInstance> registry = new ConcurrentHashMap<>();
+    private final DungeonInstanceIndex<TestInstance> instances = new DungeonInstanceIndex<>(registry::get, TestInstance::world);
+    private final DungeonTemplate template = TestDoors.dungeon("dungeon", 200);
+    // Door UIDs handed out lately, commands pick from them whether or not the door is still there
+    private final AtomicLongArray recentUIDs = new AtomicLongArray(1024);
+    private final AtomicLong cycleCount = new AtomicLong();
+
+    @Test
+    void everyIndexEmptiesAfterChurn(TestReporter reporter) throws InterruptedException {
+        for (var i = 0; i < WARMUP_CYCLES; i++) {
+            cycle(ThreadLocalRandom.current());
+        }
+        var heapBefore = usedHeap();
+
+        var running = new AtomicBoolean(true);
+        var failures = new ConcurrentLinkedQueue<Throwable>();
+        var latencies = new long[LIFECYCLE_THREADS][CYCLES / LIFECYCLE_THREADS];
+        var commands = new AtomicLong();
+
+        var lifecycles = new ArrayList<Thread>();
+        for (var thread = 0; thread < LIFECYCLE_THREADS; thread++) {
+            var threadLatencies = latencies[thread];
+            lifecycles.add(new Thread(() -> {
+                try {
+                    var random = ThreadLocalRandom.current();
+                    for (var i = 0; i < threadLatencies.length; i++) {
+                        var start = System.nanoTime();
+                        cycle(random);
+                        threadLatencies[i] = System.nanoTime() - start;
+                    }
+                } catch (Throwable t) {
+                    failures.add(t);
+                }
+            }, "lifecycle-" + thread));
+        }
+        var commanders = new ArrayList<Thread>();
+        for (var thread = 0; thread < COMMAND_THREADS; thread++) {
+            commanders.add(new Thread(() -> {
+                try {
+                    var random = ThreadLocalRandom.current();
+                    while (running.get()) {
+                        command(random, recentUIDs.get(random.nextInt(recentUIDs.length())));
+                        commands.incrementAndGet();
+                    }
+                } catch (Throwable t) {
+                    failures.add(t);
+                }
+            }, "commands-" + thread));
+        }
+
+        commanders.forEach(Thread::start);
+        lifecycles.forEach(Thread::start);
+        for (var thread : lifecycles) {
+            thread.join(TimeUnit.MINUTES.toMillis(10));
+            assertFalse(thread.isAlive(), thread.getName() + " didn't finish");
+        }
+        running.set(false);
+        for (var thread : commanders) {
+            thread.join();
+        }
+        if (!failures.isEmpty()) {
+            fail(failures.peek());
+        }
+
+        assertEquals(0, doors.size());
+        assertTrue(doors.getAll().isEmpty());
+        assertEquals(List.of(), doors.verify(worldUID -> false));
+        assertEquals(0, instances.size());
+        assertEquals(List.of(), instances.verify(worldUID -> false));
+        assertTrue(registry.isEmpty());
+
+        var heapGrowth = usedHeap() - heapBefore;
+        var allLatencies = Arrays.stream(latencies).flatMapToLong(Arrays::stream).sorted().toArray();
+        reporter.publishEntry(Map.of(
+                "cycles", String.valueOf(cycleCount.get()),
+                "doorCommands", String.valueOf(commands.get()),
+                "heapGrowthKiB", String.valueOf(heapGrowth >> 10),
+                "cycleP50Micros", String.valueOf(TimeUnit.NANOSECONDS.toMicros(allLatencies[allLatencies.length / 2])),
+                "cycleP99Micros", String.valueOf(TimeUnit.NANOSECONDS.toMicros(allLatencies[allLatencies.length * 99 / 100])),
+                "cycleMaxMicros", String.valueOf(TimeUnit.NANOSECONDS.toMicros(allLatencies[allLatencies.length - 1]))));
+    }
+
+    // What the main thread does for an instance, from its world loading to its world unloading
+    private void cycle(ThreadLocalRandom random) {
+        var world = TestDoors.world("instance_" + cycleCount.incrementAndGet());
+        var editMode = random.nextInt(4) == 0;
+
+        // World loaded, MythicDungeons registers its instance a little later
+        instances.markLoading(world);
+        assertNull(instances.get(world));
+        registry.put(world, new TestInstance(world, editMode));
+        assertNotNull(instances.resolve(world));
+
+        var firstDoorUID = doors.reserve(world.getUID(), template.size());
+        doors.addAll(world, template.name(), editMode ? "" : "_" + world.getName(), firstDoorUID, template.doors());
+        for (var i = 0; i < 8; i++) {
+            recentUIDs.set(random.nextInt(recentUIDs.length()), firstDoorUID - random.nextInt(template.size()));
+        }
+
+        // Played: doors opened and looked up, edit mode adds and removes a few
+        for (var i = 0; i < 20; i++) {
+            assertNotNull(instances.get(world));
+            var doorUID = doors.getUIDByName(world.getUID(), "door" + random.nextInt(template.size()));
+            if (doorUID != 0) {
+                command(random, doorUID);
+            }
+            if (editMode) {
+                var addedUID = doors.reserve(world.getUID(), 1);
+                doors.add(world, template.name(), "", addedUID, TestDoors.door("added" + i, i * 4, 100, 0));
+                if (random.nextBoolean()) {
+                    assertNotNull(doors.remove(addedUID));
+                } else {
+                    recentUIDs.set(random.nextInt(recentUIDs.length()), addedUID);
+                }
+            }
+        }
+
+        // World unloaded, MythicDungeons drops the instance
+        doors.removeWorld(world.getUID());
+        instances.remove(world);
+        registry.remove(world);
+    }
+
+    // A door command, the door may be gone or its UID reused by another world by now
+    private void command(ThreadLocalRandom random, long doorUID) {
+        if (doorUID == 0) {
+            return;
+        }
+        var door = doors.get(doorUID);
+        if (door == null) {
+            assertFalse(doors.setLocked(doorUID, true));
+            return;
+        }
+        assertEquals(doorUID, door.getDoorUID());
+        var min = door.getMinimum();
+        switch (random.nextInt(6)) {
+            case 0 -> doors.setLocked(doorUID, random.nextBoolean());
+            case 1 -> doors.setCoords(doorUID, random.nextBoolean(), min.getBlockX(), min.getBlockY(), min.getBlockZ(),
+                    min.getBlockX() + 2, min.getBlockY() + 2, min.getBlockZ(), DoorDirection.values()[random.nextInt(4)]);
+            case 2 -> doors.setPowerBlock(doorUID, min.getBlockX(), min.getBlockY() - 1 - random.nextInt(2), min.getBlockZ());
+            case 3 -> doors.getByName(door.getName()).forEach(sameName -> assertEquals(door.getName(), sameName.getName()));
+            case 4 -> doors.getAt(door.getWorld().getUID(), min.getBlockX(), min.getBlockY(), min.getBlockZ())
+                    .forEach(atDoor -> assertSame(door.getWorld(), atDoor.getWorld()));
+            default -> {
+                // Deleted by a player, rarely
+                if (random.nextInt(50) == 0) {
+                    doors.remove(doorUID);
+                }
+            }
+        }
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        var runtime = Runtime.getRuntime();
+        for (var i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    // Stand-in for a MythicDungeons instance, all the index asks is its world
+    private record TestInstance(World world, boolean editMode) {
+    }
+}
@@ -0,0 +1,68 @@
+package it.novaverse.bigdoorsdungeons;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RealDoorCacheTest {
+
+    @Test
+    void handsOutCopies() {
+        var cache = new RealDoorCache(100);
+        var world = TestDoors.world("world");
+        var playerUUID = UUID.randomUUID();
+        var loads = new AtomicInteger();
+
+        var first = cache.getDoor(playerUUID, 1, false, () -> {
+            loads.incrementAndGet();
+            return TestDoors.realDoor(world, 1, playerUUID);
+        });
+        // BigDoors moves the door it's given, the cached one must not follow
+        first.getMinimum().setX(100);
+        var second = cache.getDoor(playerUUID, 1, false, () -> fail("Should be cached"));
+        assertNotSame(first, second);
+        assertEquals(0, second.getMinimum().getBlockX());
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    void boundHoldsAcrossPlayers() {
+        var cache = new RealDoorCache(50);
+        var world = TestDoors.world("world");
+        for (var player = 0; player < 500; player++) {
+            var playerUUID = UUID.randomUUID();
+            cache.getDoor(playerUUID, 1, false, () -> TestDoors.realDoor(world, 1, playerUUID));
+            cache.getOwners(1, playerUUID, java.util.ArrayList::new);
+        }
+        assertEquals(50, cache.size());
+
+        cache.invalidate(1);
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void invalidateDropsEveryLookupOfTheDoor() {
+        var cache = new RealDoorCache(100);
+        var world = TestDoors.world("world");
+        var playerUUID = UUID.randomUUID();
+        cache.getDoor(playerUUID, 1, false, () -> TestDoors.realDoor(world, 1, playerUUID));
+        cache.getDoor(playerUUID, 1, true, () -> TestDoors.realDoor(world, 1, playerUUID));
+        cache.getDoor(null, 1, true, () -> null);
+        cache.getOwner(1, () -> null);
+        cache.getDoor(playerUUID, 2, false, () -> TestDoors.realDoor(world, 2, playerUUID));
+        assertEquals(5, cache.size());
+
+        cache.invalidate(1);
+        assertEquals(1, cache.size());
+        var loads = new AtomicInteger();
+        cache.getDoor(playerUUID, 1, false, () -> {
+            loads.incrementAndGet();
+            return TestDoors.realDoor(world, 1, playerUUID);
+        });
+        assertEquals(1, loads.get());
+    }
+}
@@ -0,0 +1,88 @@
+package it.novaverse.bigdoorsdungeons;
+
+import nl.pim16aap2.bigDoors.Door;
+import nl.pim16aap2.bigDoors.util.DoorDirection;
+import nl.pim16aap2.bigDoors.util.DoorType;
+import nl.pim16aap2.bigDoors.util.RotateDirection;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.util.Vector;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.UUID;
+
+// Stand-ins for what a running server would provide
+final class TestDoors {
+
+    private TestDoors() {
+    }
+
+    // Answers what the index asks a world, nothing else
+    static World world(String name) {
+        var worldUID = UUID.randomUUID();
+        return (World) Proxy.newProxyInstance(World.class.getClassLoader(), new Class<?>[]{World.class}, (proxy, method, args) -> switch (method.getName()) {
+            case "getUID" -> worldUID;
+            case "getName", "toString" -> name;
+            case "getMinHeight" -> -64;
+            case "getMaxHeight" -> 320;
+            case "hashCode" -> worldUID.hashCode();
+            case "equals" -> proxy == args[0];
+            default -> throw new UnsupportedOperationException(method.getName());
+        });
+    }
+
+    // A 3x3 door with its power block right below it
+    static DoorTemplate door(String name, int x, int y, int z) {
+        return new DoorTemplate(
+                name,
+                new Vector(x, y, z),
+                new Vector(x + 2, y + 2, z),
+                new Vector(x, y, z),
+                new Vector(x, y - 1, z),
+                false,
+                false,
+                DoorType.DOOR,
+                DoorDirection.NORTH,
+                RotateDirection.NONE,
+                0,
+                false,
+                false,
+                0
+        );
+    }
+
+    // A door as the SQLite storage would return it to the player
+    static Door realDoor(World world, long doorUID, UUID playerUUID) {
+        return new Door(
+                playerUUID,
+                "player",
+                playerUUID,
+                world,
+                new Location(world, 0, 64, 0),
+                new Location(world, 2, 66, 0),
+                new Location(world, 0, 64, 0),
+                "door" + doorUID,
+                false,
+                doorUID,
+                false,
+                0,
+                DoorType.DOOR,
+                DoorDirection.NORTH,
+                new Location(world, 0, 63, 0),
+                RotateDirection.NONE,
+                0,
+                false,
+                false
+        );
+    }
+
+    // Doors laid out on a grid, a few to every chunk section
+    static DungeonTemplate dungeon(String name, int doors) {
+        var templates = new ArrayList<DoorTemplate>(doors);
+        for (var i = 0; i < doors; i++) {
+            templates.add(door("door" + i, (i % 32) * 6, 64, (i / 32) * 6));
+        }
+        return new DungeonTemplate(name, templates);
+    }
+}
@@ -0,0 +1,319 @@
+package it.novaverse.bigdoorsdungeons;
+
+import nl.pim16aap2.bigDoors.util.DoorDirection;
+import nl.pim16aap2.bigDoors.util.Util;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VirtualDoorIndexTest {
+
+    @Test
+    void loadLookupAndUnload() {
+        var index = new VirtualDoorIndex();
+        var world = TestDoors.world("dungeon_1");
+        var template = TestDoors.dungeon("dungeon", 100);
+        var firstDoorUID = index.reserve(world.getUID(), template.size());
+        index.addAll(world, template.name(), "_" + world.getName(), firstDoorUID, template.doors());
+
+        assertEquals(100, index.size());
+        assertEquals(100, index.size(world.getUID()));
+        var door = index.getByName(world.getUID(), "door42");
+        assertNotNull(door);
+        assertEquals("door42_dungeon_1", door.getName());
+        assertEquals(firstDoorUID - 42, door.getDoorUID());
+        assertEquals(List.of(door.getDoorUID()), index.getByName("door42_dungeon_1").stream().map(current -> current.getDoorUID()).toList());
+        assertEquals(door.getDoorUID(), index.getAt(world.getUID(), door.getMinimum().getBlockX() + 1, 65, door.getMinimum().getBlockZ()).get(0).getDoorUID());
+
+        var powerBlock = door.getPowerBlockLoc();
+        var chunk = index.getPowerBlocks(Util.chunkHashFromLocation(powerBlock.getBlockX(), powerBlock.getBlockZ(), world.getUID()));
+        assertNotNull(chunk);
+        assertEquals(door.getDoorUID(), chunk.byLocation().get(Util.locationHash(powerBlock.getBlockX(), powerBlock.getBlockY(), powerBlock.getBlockZ(), world.getUID())));
+
+        assertEquals(100, index.removeWorld(world.getUID()).size());
+        assertEquals(0, index.size());
+        assertNull(index.get(door.getDoorUID()));
+        assertTrue(index.getAll().isEmpty());
+        assertEquals(List.of(), index.verify(worldUID -> false));
+    }
+
+    @Test
+    void writesLeaveOtherWorldsUntouched() {
+        var index = new VirtualDoorIndex();
+        var first = TestDoors.world("first");
+        var second = TestDoors.world("second");
+        var template = TestDoors.dungeon("dungeon", 10);
+        index.addAll(first, template.name(), "_first", index.reserve(first.getUID(), 10), template.doors());
+        index.addAll(second, template.name(), "_second", index.reserve(second.getUID(), 10), template.doors());
+        var firstVersion = index.getVersion(first.getUID());
+        var secondVersion = index.getVersion(second.getUID());
+
+        var doorUID = index.getUIDByName(first.getUID(), "door3");
+        assertNotNull(index.remove(doorUID));
+        assertNull(index.get(doorUID));
+        assertEquals(9, index.size(first.getUID()));
+        assertEquals(10, index.size(second.getUID()));
+        assertEquals(19, index.size());
+        // Only the world that changed invalidates what was cached against it
+        assertNotEquals(firstVersion, index.getVersion(first.getUID()));
+        assertEquals(secondVersion, index.getVersion(second.getUID()));
+        assertTrue(index.getByName("door3_first").isEmpty());
+        assertEquals(1, index.getByName("door3_second").size());
+        assertEquals(List.of(), index.getPage(null, first.getUID(), "door3_first", null, 0, 10));
+        assertEquals(1, index.getPage(null, null, "door3_second", null, 0, 10).size());
+        assertEquals(List.of(), index.verify(worldUID -> true));
+    }
+
+    @Test
+    void staleUIDsDontResolveAfterSlotReuse() {
+        var index = new VirtualDoorIndex();
+        var template = TestDoors.dungeon("dungeon", 5);
+        var first = TestDoors.world("first");
+        var staleUID = index.reserve(first.getUID(), template.size());
+        index.addAll(first, template.name(), "_first", staleUID, template.doors());
+        index.removeWorld(first.getUID());
+
+        var second = TestDoors.world("second");
+        var firstDoorUID = index.reserve(second.getUID(), template.size());
+        index.addAll(second, template.name(), "_second", firstDoorUID, template.doors());
+
+        // Same slot and index, another generation
+        assertEquals(VirtualDoorIndex.slotOf(staleUID), VirtualDoorIndex.slotOf(firstDoorUID));
+        assertEquals(VirtualDoorIndex.indexOf(staleUID), VirtualDoorIndex.indexOf(firstDoorUID));
+        assertNotEquals(staleUID, firstDoorUID);
+        assertFalse(index.contains(staleUID));
+        assertNull(index.get(staleUID));
+        assertNull(index.remove(staleUID));
+        assertFalse(index.setLocked(staleUID, true));
+        assertEquals(firstDoorUID, index.get(firstDoorUID).getDoorUID());
+        assertEquals(5, index.size());
+    }
+
+    @Test
+    void movedDoorFollowsItsSections() {
+        var index = new VirtualDoorIndex();
+        var world = TestDoors.world("dungeon_1");
+        var doorUID = index.reserve(world.getUID(), 1);
+        index.add(world, "dungeon", "_dungeon_1", doorUID, TestDoors.door("gate", 0, 64, 0));
+        var version = index.getVersion(world.getUID());
+
+        assertTrue(index.setCoords(doorUID, true, 40, 64, 40, 42, 66, 40, DoorDirection.EAST));
+        assertEquals(List.of(), index.getAt(world.getUID(), 0, 64, 0));
+        assertEquals(doorUID, index.getAt(world.getUID(), 41, 65, 40).get(0).getDoorUID());
+        assertEquals(1, index.getInChunk(world.getUID(), 2, 2).size());
+        assertTrue(index.getInChunk(world.getUID(), 0, 0).isEmpty());
+        // Moving changes neither names nor membership
+        assertEquals(version, index.getVersion(world.getUID()));
+        assertEquals(List.of(), index.verify(worldUID -> true));
+    }
+
+    // A door swinging back and forth over a block shared by both positions is found there at every moment,
+    // always whole in one of them
+    @Test
+    void movingDoorStaysVisible() throws InterruptedException {
+        var index = new VirtualDoorIndex();
+        var world = TestDoors.world("dungeon_1");
+        var doorUID = index.reserve(world.getUID(), 1);
+        index.add(world, "dungeon", "_dungeon_1", doorUID, TestDoors.door("gate", 14, 64, 14));
+        // Over the shared block before the reader starts looking
+        index.setCoords(doorUID, false, 14, 64, 16, 18, 66, 16, DoorDirection.NORTH);
+        var running = new AtomicBoolean(true);
+        var failures = new ConcurrentLinkedQueue<Throwable>();
+        var mover = new Thread(() -> {
+            for (var i = 0; i < 200_000; i++) {
+                if (i % 2 == 0) {
+                    index.setCoords(doorUID, true, 16, 64, 14, 16, 66, 18, DoorDirection.EAST);
+                } else {
+                    index.setCoords(doorUID, false, 14, 64, 16, 18, 66, 16, DoorDirection.NORTH);
+                }
+            }
+            running.set(false);
+        });
+        var reader = new Thread(() -> {
+            try {
+                while (running.get()) {
+                    var found = index.getAt(world.getUID(), 16, 65, 16);
+                    assertEquals(1, found.size());
+                    var door = found.get(0);
+                    var open = door.isOpen();
+                    assertEquals(open ? List.of(16, 14, 16, 18) : List.of(14, 16, 18, 16),
+                            List.of(door.getMinimum().getBlockX(), door.getMinimum().getBlockZ(), door.getMaximum().getBlockX(), door.getMaximum().getBlockZ()));
+                    assertEquals(open ? DoorDirection.EAST : DoorDirection.NORTH, door.getEngSide());
+                }
+            } catch (Throwable t) {
+                failures.add(t);
+            }
+        });
+        mover.start();
+        reader.start();
+        mover.join();
+        reader.join();
+
+        if (!failures.isEmpty()) {
+            fail(failures.peek());
+        }
+        assertEquals(List.of(), index.verify(worldUID -> true));
+    }
+
+    // Settings changed one after the other are seen in that order, each door read holds the state between two setters
+    @Test
+    void materializedDoorIsNeverHalfUpdated() throws InterruptedException {
+        var index = new VirtualDoorIndex();
+        var world = TestDoors.world("dungeon_1");
+        var doorUID = index.reserve(world.getUID(), 1);
+        index.add(world, "dungeon", "_dungeon_1", doorUID, TestDoors.door("gate", 0, 64, 0));
+        index.setAutoClose(doorUID, 0);
+        index.setBlocksToMove(doorUID, 0);
+        var running = new AtomicBoolean(true);
+        var failures = new ConcurrentLinkedQueue<Throwable>();
+        var writer = new Thread(() -> {
+            for (var i = 1; i <= 200_000; i++) {
+                index.setAutoClose(doorUID, i);
+                index.setBlocksToMove(doorUID, i);
+                index.setLocked(doorUID, i % 2 == 1);
+                index.setNotificationEnabled(doorUID, i % 2 == 1);
+            }
+            running.set(false);
+        });
+        var readers = new ArrayList<Thread>();
+        for (var reader = 0; reader < 2; reader++) {
+            readers.add(new Thread(() -> {
+                try {
+                    var lastAutoClose = 0;
+                    while (running.get()) {
+                        var door = index.get(doorUID);
+                        var autoClose = door.getAutoClose();
+                        var blocksToMove = door.getBlocksToMove();
+                        assertTrue(blocksToMove == autoClose || blocksToMove == autoClose - 1, autoClose + " / " + blocksToMove);
+                        assertTrue(autoClose >= lastAutoClose, "Went back from " + lastAutoClose + " to " + autoClose);
+                        // Step i leaves both flags at i % 2 == 1, locked first
+                        var step = autoClose % 2 == 1;
+                        if (blocksToMove < autoClose) {
+                            assertEquals(List.of(!step, !step), List.of(door.isLocked(), door.notificationEnabled()));
+                        } else if (door.notificationEnabled() == step) {
+                            assertEquals(step, door.isLocked());
+                        }
+                        lastAutoClose = autoClose;
+                    }
+                } catch (Throwable t) {
+                    failures.add(t);
+                }
+            }, "reader-" + reader));
+        }
+        writer.start();
+        readers.forEach(Thread::start);
+        writer.join();
+        for (var reader : readers) {
+            reader.join();
+        }
+
+        if (!failures.isEmpty()) {
+            fail(failures.peek());
+        }
+        assertEquals(200_000, index.get(doorUID).getBlocksToMove());
+    }
+
+    // Instances loading and unloading, and edit-mode doors inserted and removed one at a time, while readers look doors up
+    @Test
+    void concurrentInsertRemoveAndLookup() throws InterruptedException {
+        var index = new VirtualDoorIndex();
+        var template = TestDoors.dungeon("dungeon", 200);
+        var running = new AtomicBoolean(true);
+        var failures = new ConcurrentLinkedQueue<Throwable>();
+        var lookups = new AtomicLong();
+        // UIDs handed out so far, readers pick from them whether or not the door is still there
+        var seenUIDs = new ConcurrentLinkedQueue<Long>();
+        var threads = new ArrayList<Thread>();
+        var writers = 4;
+        var done = new CountDownLatch(writers);
+
+        for (var writer = 0; writer < writers; writer++) {
+            var id = writer;
+            threads.add(new Thread(() -> {
+                try {
+                    var random = ThreadLocalRandom.current();
+                    for (var cycle = 0; cycle < 300; cycle++) {
+                        var world = TestDoors.world("instance_" + id + "_" + cycle);
+                        if (random.nextBoolean()) {
+                            var firstDoorUID = index.reserve(world.getUID(), template.size());
+                            index.addAll(world, template.name(), "_" + world.getName(), firstDoorUID, template.doors());
+                            seenUIDs.add(firstDoorUID - random.nextInt(template.size()));
+                        } else {
+                            // Edit mode, doors come and go one by one
+                            for (var i = 0; i < 20; i++) {
+                                var doorUID = index.reserve(world.getUID(), 1);
+                                index.add(world, template.name(), "", doorUID, TestDoors.door("edit" + i, i * 4, 64, 0));
+                                seenUIDs.add(doorUID);
+                                if (random.nextInt(3) == 0) {
+                                    assertNotNull(index.remove(doorUID));
+                                }
+                            }
+                        }
+                        index.removeWorld(world.getUID());
+                    }
+                } catch (Throwable t) {
+                    failures.add(t);
+                } finally {
+                    done.countDown();
+                }
+            }, "writer-" + writer));
+        }
+        for (var reader = 0; reader < 4; reader++) {
+            threads.add(new Thread(() -> {
+                try {
+                    while (running.get()) {
+                        for (var doorUID : seenUIDs) {
+                            var door = index.get(doorUID);
+                            if (door != null) {
+                                assertEquals(doorUID, door.getDoorUID());
+                                var powerBlock = door.getPowerBlockLoc();
+                                var worldUID = door.getWorld().getUID();
+                                // May already be gone, but never point at another door
+                                var chunk = index.getPowerBlocks(Util.chunkHashFromLocation(powerBlock.getBlockX(), powerBlock.getBlockZ(), worldUID));
+                                var locationHash = Util.locationHash(powerBlock.getBlockX(), powerBlock.getBlockY(), powerBlock.getBlockZ(), worldUID);
+                                if (chunk != null && chunk.byLocation().containsKey(locationHash)) {
+                                    assertEquals(doorUID, chunk.byLocation().get(locationHash));
+                                }
+                                for (var sameName : index.getByName(door.getName())) {
+                                    assertEquals(door.getName(), sameName.getName());
+                                }
+                                for (var atDoor : index.getAt(worldUID, door.getMinimum().getBlockX(), door.getMinimum().getBlockY(), door.getMinimum().getBlockZ())) {
+                                    assertSame(door.getWorld(), atDoor.getWorld());
+                                }
+                            }
+                            lookups.incrementAndGet();
+                        }
+                        assertTrue(index.size() >= 0);
+                        index.getAll().forEach(door -> assertTrue(door.getDoorUID() < 0));
+                    }
+                } catch (Throwable t) {
+                    failures.add(t);
+                }
+            }, "reader-" + reader));
+        }
+
+        threads.forEach(Thread::start);
+        assertTrue(done.await(2, TimeUnit.MINUTES), "Writers didn't finish");
+        running.set(false);
+        for (var thread : threads) {
+            thread.join();
+        }
+
+        if (!failures.isEmpty()) {
+            fail(failures.peek());
+        }
+        assertTrue(lookups.get() > 0);
+        assertEquals(0, index.size());
+        assertTrue(index.getAll().isEmpty());
+        assertEquals(List.of(), index.verify(worldUID -> false));
+    }
+}